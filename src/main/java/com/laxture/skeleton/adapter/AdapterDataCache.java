@@ -0,0 +1,90 @@
+package com.laxture.skeleton.adapter;
+
+import android.os.SystemClock;
+
+import com.laxture.skeleton.util.LazyJsonList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded in-memory cache of converted adapter data, keyed by
+ * {@link com.laxture.skeleton.request.AbstractApiTask#getRequestKey()}.
+ * Adapter renders cached data at once and revalidates it from server in
+ * background (stale-while-revalidate). Entries expire after TTL, and least
+ * recently used entries are evicted once there are more than max entries.
+ */
+public class AdapterDataCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+    public static final long DEFAULT_TTL = 5 * 60 * 1000;
+
+    private static AdapterDataCache sDefault;
+
+    public static synchronized AdapterDataCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new AdapterDataCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+        }
+        return sDefault;
+    }
+
+    private static class Entry {
+        final List<?> data;
+        final long createdAt;
+
+        Entry(List<?> data, long createdAt) {
+            this.data = data;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final int mMaxEntries;
+    private final long mTtl;
+
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > mMaxEntries;
+        }
+    };
+
+    public AdapterDataCache(int maxEntries, long ttlMillis) {
+        mMaxEntries = maxEntries;
+        mTtl = ttlMillis;
+    }
+
+    /**
+     * @return cached data, or null if there is no entry or it is expired.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> List<T> get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) return null;
+        if (SystemClock.elapsedRealtime() - entry.createdAt > mTtl) {
+            mEntries.remove(key);
+            return null;
+        }
+        return (List<T>) entry.data;
+    }
+
+    public synchronized void put(String key, List<?> data) {
+        if (data == null) return;
+        // LazyJsonList is read-only, copying it would decode every element
+        List<?> snapshot = data instanceof LazyJsonList
+                ? data : Collections.unmodifiableList(new ArrayList<>(data));
+        mEntries.put(key, new Entry(snapshot, SystemClock.elapsedRealtime()));
+    }
+
+    public synchronized void invalidate(String key) {
+        mEntries.remove(key);
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+}
@@ -3,12 +3,16 @@ package com.laxture.skeleton.adapter;
 import android.os.Build;
 import android.widget.ArrayAdapter;
 
+import androidx.lifecycle.LifecycleOwner;
+
 import com.laxture.lib.RuntimeContext;
 import com.laxture.lib.java8.Consumer;
 import com.laxture.lib.task.TaskException;
 import com.laxture.lib.task.TaskListener;
-import com.laxture.lib.task.TaskManager;
 import com.laxture.skeleton.request.AbstractApiTask;
+import com.laxture.skeleton.request.ApiMetrics;
+import com.laxture.skeleton.request.TaskScheduler;
+import com.laxture.skeleton.util.LazyJsonList;
 
 import java.util.List;
 
@@ -18,13 +22,37 @@ public abstract class ApiAdapter<T, ApiResult> extends ArrayAdapter<T>
 
     private Consumer<Long> mTotalConsumer;
 
+    private AdapterDataCache mDataCache;
+    private String mCacheKey;
+    private List<T> mCachedData;
+
+    private String mTaskUrl;
+
+    // read by position instead of copied into ArrayAdapter
+    private LazyJsonList<T> mLazyData;
+
+    private TaskScheduler.Priority mPriority = TaskScheduler.Priority.UserVisible;
+    private final TaskLifecycleBinding mLifecycleBinding = new TaskLifecycleBinding(null);
+
     public ApiAdapter() {
         super(RuntimeContext.getApplication(), 0);
     }
 
     @Override
     public void onTaskFinished(ApiResult result) {
+        boolean timed = ApiMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
         List<T> resultList = convertApiResultToData(result);
+        if (timed) {
+            ApiMetrics.record(mTaskUrl, ApiMetrics.Phase.Convert, System.nanoTime() - start, 0);
+        }
+        if (mDataCache != null) {
+            mDataCache.put(mCacheKey, resultList);
+            // cached data is still valid, no need to rebind
+            boolean unchanged = resultList != null && resultList.equals(mCachedData);
+            mCachedData = null;
+            if (unchanged) return;
+        }
         setArrayData(resultList);
     }
 
@@ -35,7 +63,10 @@ public abstract class ApiAdapter<T, ApiResult> extends ArrayAdapter<T>
 
     void setArrayData(List<T> data) {
         clear();
-        if (Build.VERSION.SDK_INT > 10) {
+        if (data instanceof LazyJsonList) {
+            mLazyData = (LazyJsonList<T>) data;
+            notifyDataSetChanged();
+        } else if (Build.VERSION.SDK_INT > 10) {
             addAll(data);
         } else {
             for (T item : data) {
@@ -44,6 +75,22 @@ public abstract class ApiAdapter<T, ApiResult> extends ArrayAdapter<T>
         }
     }
 
+    @Override
+    public int getCount() {
+        return mLazyData != null ? mLazyData.size() : super.getCount();
+    }
+
+    @Override
+    public T getItem(int position) {
+        return mLazyData != null ? mLazyData.get(position) : super.getItem(position);
+    }
+
+    @Override
+    public void clear() {
+        mLazyData = null;
+        super.clear();
+    }
+
     //*************************************************************************
     // Public Method
     //*************************************************************************
@@ -52,8 +99,60 @@ public abstract class ApiAdapter<T, ApiResult> extends ArrayAdapter<T>
         this.mTotalConsumer = totalConsumer;
     }
 
+    /**
+     * Render cached data immediately when loading, then revalidate it from
+     * server. Data is swapped only if server result is not equal to cached one,
+     * so T should implement equals() to benefit from it.
+     */
+    public void setDataCache(AdapterDataCache dataCache) {
+        mDataCache = dataCache;
+    }
+
+    /**
+     * Lane of the load task in {@link TaskScheduler}, default is
+     * {@link TaskScheduler.Priority#UserVisible}. Task in flight is moved too,
+     * e.g. raise priority when a prefetched list becomes visible.
+     */
+    public void setPriority(TaskScheduler.Priority priority) {
+        mPriority = priority;
+        mLifecycleBinding.setPriority(priority);
+    }
+
+    /**
+     * Cancel outstanding load tasks when host stops or is destroyed.
+     */
+    public void bindLifecycle(LifecycleOwner owner) {
+        bindLifecycle(owner, false);
+    }
+
+    /**
+     * @param prefetchWhenStopped when host stops, keep outstanding tasks
+     *                            running in {@link TaskScheduler.Priority#Prefetch}
+     *                            lane to fill the caches instead of cancelling
+     *                            them. Tasks are cancelled when host is destroyed
+     *                            anyway.
+     */
+    public void bindLifecycle(LifecycleOwner owner, boolean prefetchWhenStopped) {
+        mLifecycleBinding.bind(owner, prefetchWhenStopped);
+    }
+
+    /**
+     * Cancel outstanding load tasks, their results are dropped.
+     */
+    public void cancelLoading() {
+        mLifecycleBinding.cancelAll();
+    }
+
     public void loadData() {
+        // result of previous load is stale now
+        mLifecycleBinding.cancelAll();
         final AbstractApiTask<ApiResult> apiTask = createApiTask();
+        mTaskUrl = apiTask.getUrl();
+        if (mDataCache != null) {
+            mCacheKey = apiTask.getRequestKey();
+            mCachedData = mDataCache.get(mCacheKey);
+            if (mCachedData != null) setArrayData(mCachedData);
+        }
         apiTask.addFinishedListener(this);
         if (mTotalConsumer != null) {
             apiTask.addFinishedListener(new TaskListener.TaskFinishedListener<ApiResult>() {
@@ -63,7 +162,8 @@ public abstract class ApiAdapter<T, ApiResult> extends ArrayAdapter<T>
                 }
             });
         }
-        TaskManager.runImmediately(apiTask);
+        mLifecycleBinding.track(apiTask, mPriority);
+        TaskScheduler.getDefault().run(apiTask, mLifecycleBinding.getPriority(mPriority));
     }
 
     //*************************************************************************
@@ -74,6 +174,10 @@ public abstract class ApiAdapter<T, ApiResult> extends ArrayAdapter<T>
 
     protected abstract void onLoadFailed(String errorMessage);
 
+    /**
+     * Return a {@link LazyJsonList} for very large result, elements are then
+     * decoded only when they are shown.
+     */
     protected abstract List<T> convertApiResultToData(ApiResult result);
 
 }
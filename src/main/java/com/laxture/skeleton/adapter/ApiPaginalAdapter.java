@@ -2,11 +2,14 @@ package com.laxture.skeleton.adapter;
 
 import android.annotation.SuppressLint;
 
+import androidx.lifecycle.LifecycleOwner;
+
 import com.laxture.lib.java8.Consumer;
 import com.laxture.lib.task.TaskException;
 import com.laxture.lib.task.TaskListener;
-import com.laxture.lib.task.TaskManager;
 import com.laxture.skeleton.request.AbstractApiTask;
+import com.laxture.skeleton.request.ApiMetrics;
+import com.laxture.skeleton.request.TaskScheduler;
 
 import java.util.List;
 
@@ -18,20 +21,50 @@ public abstract class ApiPaginalAdapter<T, ApiResult> extends PaginalAdapter<T>
 
     private Consumer<Long> mTotalConsumer;
 
+    private String mTaskUrl;
+
+    private TaskScheduler.Priority mPriority = TaskScheduler.Priority.UserVisible;
+    private final TaskLifecycleBinding mLifecycleBinding = new TaskLifecycleBinding(new Runnable() {
+        @Override
+        public void run() {
+            stopLoadingView(false);
+            mLoading = false;
+        }
+    });
+
     @Override
     public void onTaskStart() {
         setLoadingView(LoadAction.Refresh);
     }
 
     @Override
-    public void onTaskFinished(ApiResult result) {
+    public void onTaskFinished(final ApiResult result) {
+        boolean timed = ApiMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0;
         List<T> resultList = convertApiResultToData(result);
+        if (timed) {
+            ApiMetrics.record(mTaskUrl, ApiMetrics.Phase.Convert, System.nanoTime() - start, 0);
+        }
 
         switch (loadAction) {
             case Refresh:
-                reloadData(true);
-                onRefreshFromServerFinished(result);
-                break;
+                // refresh is done once local data is reloaded
+                reloadData(true, new Runnable() {
+                    @Override
+                    public void run() {
+                        onRefreshFromServerFinished(result);
+                        stopLoadingView(false);
+                        mLoading = false;
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        // list is cleared meanwhile, result is thrown away
+                        stopLoadingView(false);
+                        mLoading = false;
+                    }
+                });
+                return;
 
             case FetchMore:
                 appendData(resultList);
@@ -71,6 +104,42 @@ public abstract class ApiPaginalAdapter<T, ApiResult> extends PaginalAdapter<T>
         this.mTotalConsumer = totalConsumer;
     }
 
+    /**
+     * Lane of the load task in {@link TaskScheduler}, default is
+     * {@link TaskScheduler.Priority#UserVisible}. Task in flight is moved too,
+     * e.g. raise priority when a prefetched list becomes visible.
+     */
+    public void setPriority(TaskScheduler.Priority priority) {
+        mPriority = priority;
+        mLifecycleBinding.setPriority(priority);
+    }
+
+    /**
+     * Cancel outstanding load tasks when host stops or is destroyed.
+     */
+    public void bindLifecycle(LifecycleOwner owner) {
+        bindLifecycle(owner, false);
+    }
+
+    /**
+     * @param prefetchWhenStopped when host stops, keep outstanding tasks
+     *                            running in {@link TaskScheduler.Priority#Prefetch}
+     *                            lane to fill the caches instead of cancelling
+     *                            them. Tasks are cancelled when host is destroyed
+     *                            anyway.
+     */
+    public void bindLifecycle(LifecycleOwner owner, boolean prefetchWhenStopped) {
+        mLifecycleBinding.bind(owner, prefetchWhenStopped);
+    }
+
+    /**
+     * Cancel outstanding load tasks and local read, their results are dropped.
+     */
+    public void cancelLoading() {
+        cancelLocalRead();
+        mLifecycleBinding.cancelAll();
+    }
+
     //*************************************************************************
     // Internal Stuff
     //*************************************************************************
@@ -78,6 +147,7 @@ public abstract class ApiPaginalAdapter<T, ApiResult> extends PaginalAdapter<T>
     @Override
     protected void refresh() {
         final AbstractApiTask<ApiResult> apiTask = createRefreshApiTask();
+        mTaskUrl = apiTask.getUrl();
         apiTask.addStartListener(this);
         apiTask.addFinishedListener(this);
         if (mTotalConsumer != null) {
@@ -90,12 +160,14 @@ public abstract class ApiPaginalAdapter<T, ApiResult> extends PaginalAdapter<T>
         }
         apiTask.addFailedListener(this);
         onRefreshFromServerStart();
-        TaskManager.runImmediately(apiTask);
+        mLifecycleBinding.track(apiTask, mPriority);
+        TaskScheduler.getDefault().run(apiTask, mLifecycleBinding.getPriority(mPriority));
     }
 
     @Override
     protected void fetchMoreFromServer() {
         final AbstractApiTask<ApiResult> apiTask = createFetchMoreApiTask();
+        mTaskUrl = apiTask.getUrl();
         apiTask.addStartListener(this);
         apiTask.addFinishedListener(this);
         if (mTotalConsumer != null) {
@@ -107,7 +179,8 @@ public abstract class ApiPaginalAdapter<T, ApiResult> extends PaginalAdapter<T>
             });
         }
         apiTask.addFailedListener(this);
-        TaskManager.runImmediately(apiTask);
+        mLifecycleBinding.track(apiTask, mPriority);
+        TaskScheduler.getDefault().run(apiTask, mLifecycleBinding.getPriority(mPriority));
     }
 
 }
@@ -0,0 +1,70 @@
+package com.laxture.skeleton.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.laxture.lib.util.LLog;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Read a page from local store off the main thread, then deliver it on main
+ * thread. Reads of all adapters share one background thread, so they are
+ * served in order they are started.
+ */
+abstract class LocalRead<T> implements Runnable {
+
+    private static final Executor EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "PaginalAdapter-LocalRead");
+        }
+    });
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * Called on background thread.
+     */
+    protected abstract List<T> read();
+
+    /**
+     * Called on main thread.
+     *
+     * @param data null if read failed.
+     */
+    protected abstract void deliver(List<T> data);
+
+    void start() {
+        EXECUTOR.execute(this);
+    }
+
+    @Override
+    public final void run() {
+        List<T> data = null;
+        try {
+            data = read();
+        } catch (RuntimeException e) {
+            LLog.e("Failed to read local data", e);
+        }
+
+        final List<T> result = data;
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                deliver(result);
+            }
+        });
+    }
+
+}
@@ -6,7 +6,6 @@ import android.widget.Toast;
 import com.laxture.lib.RuntimeContext;
 import com.laxture.lib.java8.Predicate;
 import com.laxture.lib.util.Checker;
-import com.laxture.lib.util.LLog;
 import com.laxture.skeleton.R;
 
 import java.util.ArrayList;
@@ -31,14 +30,102 @@ public abstract class PaginalAdapter<T> extends BaseAdapter {
     // after refresh successfully
     protected boolean mLoadStubData;
 
-    private boolean mNoMoreFromServer;
-
     protected boolean mLoading;
 
     public int paginalRows = PAGE_ITEM_COUNT_FETCH_MORE;
 
     public int paginalRefreshRows = PAGE_ITEM_COUNT_REFRESH;
 
+    private final PaginalLoader<T> mLoader = new PaginalLoader<>(new PaginalLoader.Host<T>() {
+        @Override
+        public LoadAction getLoadAction() {
+            return loadAction;
+        }
+
+        @Override
+        public void setLoadAction(LoadAction action) {
+            loadAction = action;
+        }
+
+        @Override
+        public boolean isLoadStubData() {
+            return mLoadStubData;
+        }
+
+        @Override
+        public void setLoadStubData(boolean loadStubData) {
+            mLoadStubData = loadStubData;
+        }
+
+        @Override
+        public boolean isLoading() {
+            return mLoading;
+        }
+
+        @Override
+        public void setLoading(boolean loading) {
+            mLoading = loading;
+        }
+
+        @Override
+        public int getDataCount() {
+            return getCount();
+        }
+
+        @Override
+        public int getPaginalRows() {
+            return paginalRows;
+        }
+
+        @Override
+        public int getPaginalRefreshRows() {
+            return paginalRefreshRows;
+        }
+
+        @Override
+        public List<T> fetchMoreFromLocal(int offset) {
+            return PaginalAdapter.this.fetchMoreFromLocal(offset);
+        }
+
+        @Override
+        public void fetchMoreFromServer() {
+            PaginalAdapter.this.fetchMoreFromServer();
+        }
+
+        @Override
+        public void refresh() {
+            PaginalAdapter.this.refresh();
+        }
+
+        @Override
+        public void setLoadingView(LoadAction action) {
+            PaginalAdapter.this.setLoadingView(action);
+        }
+
+        @Override
+        public void stopLoadingView(boolean noMoreData) {
+            PaginalAdapter.this.stopLoadingView(noMoreData);
+        }
+
+        @Override
+        public void preFetchMore() {
+            PaginalAdapter.this.preFetchMore();
+        }
+
+        @Override
+        public void appendData(List<T> data) {
+            PaginalAdapter.this.appendData(data);
+        }
+
+        @Override
+        public void replaceData(List<T> data) {
+            mItems.clear();
+            if (!Checker.isEmpty(data)) mItems.addAll(data);
+            notifyDataSetChanged();
+            onReloadDataCompleted();
+        }
+    });
+
     //*************************************************************************
     // Adapter Method
     //*************************************************************************
@@ -83,6 +170,7 @@ public abstract class PaginalAdapter<T> extends BaseAdapter {
     }
 
     public void clear() {
+        cancelLocalRead();
         mItems.clear();
         notifyDataSetChanged();
     }
@@ -109,10 +197,20 @@ public abstract class PaginalAdapter<T> extends BaseAdapter {
         notifyDataSetChanged();
     }
 
+    /**
+     * Drop local read in progress.
+     */
+    protected void cancelLocalRead() {
+        mLoader.cancelLocalRead();
+    }
+
     //*************************************************************************
     // Abstract Method
     //*************************************************************************
 
+    /**
+     * Called on background thread.
+     */
     protected abstract List<T> fetchMoreFromLocal(int offset);
 
     protected abstract void fetchMoreFromServer();
@@ -131,75 +229,12 @@ public abstract class PaginalAdapter<T> extends BaseAdapter {
     // Public Method
     //*************************************************************************
 
-    public synchronized void loadData(LoadAction action) {
-        if (mLoading) {
-            LLog.i("Loading Task running, wait a while");
-            return;
-        }
-
-        loadAction = action;
-
-        // reset noMoreFromServer flag when refresh
-        if (loadAction == LoadAction.Refresh) {
-            mNoMoreFromServer = false;
-        }
-
-        // if list goes to end, stop the loading view and return
-        if (loadAction == LoadAction.FetchMore && hasNoMoreFromServer()) {
-            stopLoadingView(true);
-            return;
-        }
-
-        // if array is not initialized yet, try to load it from local
-        if (!mLoadStubData) {
-            // deliver cachedData to UI if it is just loaded from local.
-            // then continue to refresh.
-            LLog.d("deliver local data, and continue to refresh.");
-            reloadData(false);
-
-            mLoadStubData = true;
-        }
-
-        // array might be empty here for two cases:
-        // 1. no data saved to local before.
-        // 2. no result on either server or local.
-        // either case should refresh from server.
-        if (getCount() == 0) loadAction = LoadAction.Refresh;
-
-        switch (loadAction) {
-        case Stop:
-            LLog.d("No need to load any data, return.");
-            break;
-
-        case Refresh:
-            LLog.d("Fetch refresh data from server");
-            mLoading = true;
-            refresh();
-            setLoadingView(loadAction);
-            break;
-
-        case FetchMore:
-            preFetchMore();
-            List<T> cachedData = fetchMoreFromLocal(getCount());
-
-            // local fetched result is not empty, merge and return
-            if (!Checker.isEmpty(cachedData)) {
-                LLog.d("Fetch more local data, size=%d", cachedData.size());
-                appendData(cachedData);
-
-                // reach end, no need to fetch server data
-                if (cachedData.size() == paginalRows) {
-                    stopLoadingView(false);
-                    break;
-                }
-            }
-
-            LLog.d("Fetch more data from server");
-            mLoading = true;
-            fetchMoreFromServer();
-            setLoadingView(loadAction);
-            break;
-        }
+    /**
+     * Must be called on main thread. Local data is read on background thread,
+     * see {@link LocalRead}.
+     */
+    public void loadData(LoadAction action) {
+        mLoader.loadData(action);
     }
 
     //*************************************************************************
@@ -207,34 +242,34 @@ public abstract class PaginalAdapter<T> extends BaseAdapter {
     //*************************************************************************
 
     /**
-     * reload data from local database.
+     * reload data from local database. Data is read on background thread and
+     * replaces the array on main thread, then {@link #onReloadDataCompleted()}
+     * is called.
      *
      * @param afterRefreshFromServer
      */
     public void reloadData(boolean afterRefreshFromServer) {
-        clear();
-        List<T> cachedData = fetchMoreFromLocal(0);
-        appendData(cachedData);
-
-        // check if goes to the end of list
-        // this step should be taken for refresh from server only.
-        if (afterRefreshFromServer) {
-            mNoMoreFromServer = loadAction == LoadAction.Refresh
-                    && cachedData.size() < paginalRefreshRows;
-        }
+        mLoader.reloadData(afterRefreshFromServer, null, null);
+    }
 
-        onReloadDataCompleted();
+    /**
+     * @param onReloaded called on main thread when reloaded data is applied.
+     * @param onDropped called on main thread instead, if the read is dropped
+     *                  by a newer one or by {@link #cancelLocalRead()}.
+     */
+    public void reloadData(boolean afterRefreshFromServer, Runnable onReloaded,
+                           Runnable onDropped) {
+        mLoader.reloadData(afterRefreshFromServer, onReloaded, onDropped);
     }
 
     /**
      * check if there is more data from server that serve pulling
      */
     public void checkHasMoreAfterFetchServerData(List<T> fetchedData) {
-        mNoMoreFromServer = loadAction == LoadAction.FetchMore
-                && Checker.isEmpty(fetchedData);
+        mLoader.checkHasMoreAfterFetchServerData(fetchedData);
     }
 
     public boolean hasNoMoreFromServer() {
-        return mNoMoreFromServer;
+        return mLoader.hasNoMoreFromServer();
     }
 }
@@ -0,0 +1,264 @@
+package com.laxture.skeleton.adapter;
+
+import com.laxture.lib.java8.Consumer;
+import com.laxture.lib.util.Checker;
+import com.laxture.lib.util.LLog;
+import com.laxture.skeleton.adapter.PaginalAdapter.LoadAction;
+
+import java.util.List;
+
+/**
+ * Load states shared by {@link PaginalAdapter} and
+ * {@link PaginalRecyclerAdapter}. Local data is delivered first, then list is
+ * refreshed or fetched more from server. Local pages are read on background
+ * thread by {@link LocalRead}, everything else must be called on main thread.
+ */
+final class PaginalLoader<T> {
+
+    interface Host<T> {
+        // load states are kept in protected fields of the adapter, so its
+        // subclasses can still read and reset them
+        LoadAction getLoadAction();
+
+        void setLoadAction(LoadAction action);
+
+        boolean isLoadStubData();
+
+        void setLoadStubData(boolean loadStubData);
+
+        boolean isLoading();
+
+        void setLoading(boolean loading);
+
+        int getDataCount();
+
+        int getPaginalRows();
+
+        int getPaginalRefreshRows();
+
+        /**
+         * Called on background thread.
+         */
+        List<T> fetchMoreFromLocal(int offset);
+
+        void fetchMoreFromServer();
+
+        void refresh();
+
+        void setLoadingView(LoadAction action);
+
+        void stopLoadingView(boolean noMoreData);
+
+        void preFetchMore();
+
+        void appendData(List<T> data);
+
+        /**
+         * Replace data with reloaded local data.
+         *
+         * @param data null if local read failed.
+         */
+        void replaceData(List<T> data);
+    }
+
+    private final Host<T> mHost;
+
+    private boolean mNoMoreFromServer;
+
+    // local read in progress, see readLocal()
+    private boolean mReadingLocal;
+    private int mLocalGeneration;
+
+    PaginalLoader(Host<T> host) {
+        mHost = host;
+    }
+
+    boolean hasNoMoreFromServer() {
+        return mNoMoreFromServer;
+    }
+
+    //*************************************************************************
+    // Load
+    //*************************************************************************
+
+    void loadData(final LoadAction action) {
+        if (mHost.isLoading() || mReadingLocal) {
+            LLog.i("Loading Task running, wait a while");
+            return;
+        }
+
+        mHost.setLoadAction(action);
+
+        // reset noMoreFromServer flag when refresh
+        if (action == LoadAction.Refresh) {
+            mNoMoreFromServer = false;
+        }
+
+        // if list goes to end, stop the loading view and return
+        if (action == LoadAction.FetchMore && mNoMoreFromServer) {
+            mHost.stopLoadingView(true);
+            return;
+        }
+
+        // if list is not initialized yet, try to load it from local
+        if (!mHost.isLoadStubData()) {
+            // deliver cachedData to UI if it is just loaded from local.
+            // then continue to refresh.
+            LLog.d("deliver local data, and continue to refresh.");
+            mHost.setLoadStubData(true);
+            readLocal(0, new Consumer<List<T>>() {
+                @Override
+                public void consume(List<T> cachedData) {
+                    applyReloadedData(cachedData, false);
+                    loadAfterStubData(action);
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    // list is cleared or reloaded meanwhile, deliver local
+                    // data again on next load
+                    mHost.setLoadStubData(false);
+                    mHost.stopLoadingView(false);
+                }
+            });
+            return;
+        }
+
+        loadAfterStubData(action);
+    }
+
+    private void loadAfterStubData(LoadAction action) {
+        mHost.setLoadAction(action);
+
+        // list might be empty here for two cases:
+        // 1. no data saved to local before.
+        // 2. no result on either server or local.
+        // either case should refresh from server.
+        if (mHost.getDataCount() == 0) mHost.setLoadAction(LoadAction.Refresh);
+
+        switch (mHost.getLoadAction()) {
+        case Stop:
+            LLog.d("No need to load any data, return.");
+            break;
+
+        case Refresh:
+            LLog.d("Fetch refresh data from server");
+            mHost.setLoading(true);
+            mHost.refresh();
+            mHost.setLoadingView(LoadAction.Refresh);
+            break;
+
+        case FetchMore:
+            mHost.preFetchMore();
+            readLocal(mHost.getDataCount(), new Consumer<List<T>>() {
+                @Override
+                public void consume(List<T> cachedData) {
+                    onFetchMoreFromLocal(cachedData);
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    // hide the footer shown by preFetchMore()
+                    mHost.stopLoadingView(false);
+                }
+            });
+            break;
+        }
+    }
+
+    private void onFetchMoreFromLocal(List<T> cachedData) {
+        // local fetched result is not empty, merge and return
+        if (!Checker.isEmpty(cachedData)) {
+            LLog.d("Fetch more local data, size=%d", cachedData.size());
+            mHost.appendData(cachedData);
+
+            // reach end, no need to fetch server data
+            if (cachedData.size() == mHost.getPaginalRows()) {
+                mHost.stopLoadingView(false);
+                return;
+            }
+        }
+
+        LLog.d("Fetch more data from server");
+        mHost.setLoading(true);
+        mHost.fetchMoreFromServer();
+        mHost.setLoadingView(mHost.getLoadAction());
+    }
+
+    //*************************************************************************
+    // Local Data
+    //*************************************************************************
+
+    /**
+     * @param onReloaded called when reloaded data is applied. Can be null.
+     * @param onDropped called instead if the read is dropped, its data is
+     *                  never applied. Can be null.
+     */
+    void reloadData(final boolean afterRefreshFromServer, final Runnable onReloaded,
+                    Runnable onDropped) {
+        readLocal(0, new Consumer<List<T>>() {
+            @Override
+            public void consume(List<T> cachedData) {
+                applyReloadedData(cachedData, afterRefreshFromServer);
+                if (onReloaded != null) onReloaded.run();
+            }
+        }, onDropped);
+    }
+
+    private void applyReloadedData(List<T> cachedData, boolean afterRefreshFromServer) {
+        // check if goes to the end of list
+        // this step should be taken for refresh from server only.
+        if (afterRefreshFromServer) {
+            mNoMoreFromServer = mHost.getLoadAction() == LoadAction.Refresh
+                    && (cachedData == null || cachedData.size() < mHost.getPaginalRefreshRows());
+        }
+        mHost.replaceData(cachedData);
+    }
+
+    /**
+     * Read local page on background thread. Result is dropped if list is
+     * reloaded or cleared in the mean time, because offset doesn't match any
+     * more.
+     *
+     * @param onDropped called instead of consumer if result is dropped, can
+     *                  be null.
+     */
+    private void readLocal(final int offset, final Consumer<List<T>> consumer, final Runnable onDropped) {
+        final int generation = ++mLocalGeneration;
+        mReadingLocal = true;
+        new LocalRead<T>() {
+            @Override
+            protected List<T> read() {
+                return mHost.fetchMoreFromLocal(offset);
+            }
+
+            @Override
+            protected void deliver(List<T> data) {
+                if (generation != mLocalGeneration) {
+                    LLog.d("Drop stale local data at offset %d", offset);
+                    if (onDropped != null) onDropped.run();
+                    return;
+                }
+                mReadingLocal = false;
+                consumer.consume(data);
+            }
+        }.start();
+    }
+
+    /**
+     * Drop local read in progress.
+     */
+    void cancelLocalRead() {
+        mLocalGeneration++;
+        mReadingLocal = false;
+    }
+
+    /**
+     * check if there is more data from server that serve pulling
+     */
+    void checkHasMoreAfterFetchServerData(List<T> fetchedData) {
+        mNoMoreFromServer = mHost.getLoadAction() == LoadAction.FetchMore
+                && Checker.isEmpty(fetchedData);
+    }
+
+}
@@ -0,0 +1,388 @@
+package com.laxture.skeleton.adapter;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.laxture.lib.java8.Predicate;
+import com.laxture.lib.util.Checker;
+import com.laxture.skeleton.adapter.PaginalAdapter.LoadAction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * RecyclerView counterpart of {@link PaginalAdapter}, with same
+ * {@link LoadAction} and local-then-server loading.
+ *
+ * Every mutation submits a new list, which is diffed against displayed list on
+ * background thread by {@link AsyncListDiffer}, then only inserted, removed,
+ * moved and changed rows are notified. Items are identified by
+ * {@link #getItemKey(Object)}, which is also used as stable id. Partial change
+ * of an item can be described by {@link #getChangePayload(Object, Object)} and
+ * rebound by {@link #onBindPayloads(RecyclerView.ViewHolder, Object, List)}.
+ *
+ * Mutations must be called on main thread. {@link #getItem(int)} and
+ * {@link #getItemCount()} return displayed list, while {@link #getDataCount()}
+ * includes mutations still being diffed.
+ */
+public abstract class PaginalRecyclerAdapter<T, VH extends RecyclerView.ViewHolder>
+        extends RecyclerView.Adapter<VH> {
+
+    private final AsyncListDiffer<T> mDiffer = new AsyncListDiffer<>(this, new DiffUtil.ItemCallback<T>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull T oldItem, @NonNull T newItem) {
+            return getItemKey(oldItem) == getItemKey(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull T oldItem, @NonNull T newItem) {
+            return PaginalRecyclerAdapter.this.areContentsTheSame(oldItem, newItem);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull T oldItem, @NonNull T newItem) {
+            return PaginalRecyclerAdapter.this.getChangePayload(oldItem, newItem);
+        }
+    });
+
+    // latest submitted list, displayed list catches up after diffing
+    private List<T> mItems = Collections.emptyList();
+
+    protected LoadAction loadAction = LoadAction.Stop;
+
+    // if false, try load from local and fetch refresh result
+    // from server at the mean time. Should be reset to false
+    // after refresh successfully
+    protected boolean mLoadStubData;
+
+    protected boolean mLoading;
+
+    public int paginalRows = PaginalAdapter.PAGE_ITEM_COUNT_FETCH_MORE;
+
+    public int paginalRefreshRows = PaginalAdapter.PAGE_ITEM_COUNT_REFRESH;
+
+    private final PaginalLoader<T> mLoader = new PaginalLoader<>(new PaginalLoader.Host<T>() {
+        @Override
+        public LoadAction getLoadAction() {
+            return loadAction;
+        }
+
+        @Override
+        public void setLoadAction(LoadAction action) {
+            loadAction = action;
+        }
+
+        @Override
+        public boolean isLoadStubData() {
+            return mLoadStubData;
+        }
+
+        @Override
+        public void setLoadStubData(boolean loadStubData) {
+            mLoadStubData = loadStubData;
+        }
+
+        @Override
+        public boolean isLoading() {
+            return mLoading;
+        }
+
+        @Override
+        public void setLoading(boolean loading) {
+            mLoading = loading;
+        }
+
+        @Override
+        public int getDataCount() {
+            return PaginalRecyclerAdapter.this.getDataCount();
+        }
+
+        @Override
+        public int getPaginalRows() {
+            return paginalRows;
+        }
+
+        @Override
+        public int getPaginalRefreshRows() {
+            return paginalRefreshRows;
+        }
+
+        @Override
+        public List<T> fetchMoreFromLocal(int offset) {
+            return PaginalRecyclerAdapter.this.fetchMoreFromLocal(offset);
+        }
+
+        @Override
+        public void fetchMoreFromServer() {
+            PaginalRecyclerAdapter.this.fetchMoreFromServer();
+        }
+
+        @Override
+        public void refresh() {
+            PaginalRecyclerAdapter.this.refresh();
+        }
+
+        @Override
+        public void setLoadingView(LoadAction action) {
+            PaginalRecyclerAdapter.this.setLoadingView(action);
+        }
+
+        @Override
+        public void stopLoadingView(boolean noMoreData) {
+            PaginalRecyclerAdapter.this.stopLoadingView(noMoreData);
+        }
+
+        @Override
+        public void preFetchMore() {
+            PaginalRecyclerAdapter.this.preFetchMore();
+        }
+
+        @Override
+        public void appendData(List<T> data) {
+            PaginalRecyclerAdapter.this.appendData(data);
+        }
+
+        @Override
+        public void replaceData(List<T> data) {
+            // old and reloaded list are diffed in one pass
+            submit(data != null ? new ArrayList<>(data) : Collections.<T>emptyList(), new Runnable() {
+                @Override
+                public void run() {
+                    onReloadDataCompleted();
+                }
+            });
+        }
+    });
+
+    public PaginalRecyclerAdapter() {
+        setHasStableIds(true);
+    }
+
+    //*************************************************************************
+    // Adapter Method
+    //*************************************************************************
+
+    public T getItem(int position) {
+        return mDiffer.getCurrentList().get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mDiffer.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItemKey(getItem(position));
+    }
+
+    /**
+     * @return count of items including mutations not displayed yet.
+     */
+    public int getDataCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull VH holder, int position) {
+        onBindItem(holder, getItem(position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull VH holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) onBindItem(holder, getItem(position));
+        else onBindPayloads(holder, getItem(position), payloads);
+    }
+
+    public void remove(int index) {
+        List<T> items = new ArrayList<>(mItems);
+        items.remove(index);
+        submit(items, null);
+    }
+
+    public void remove(T item) {
+        List<T> items = new ArrayList<>(mItems);
+        if (items.remove(item)) submit(items, null);
+    }
+
+    public void removeIf(Predicate<T> predicate) {
+        for (T item : mItems) {
+            if (predicate.test(item)) {
+                remove(item);
+                return;
+            }
+        }
+    }
+
+    public void add(T item) {
+        List<T> items = new ArrayList<>(mItems);
+        items.add(item);
+        submit(items, null);
+    }
+
+    public void add(int index, T item) {
+        List<T> items = new ArrayList<>(mItems);
+        items.add(index, item);
+        submit(items, null);
+    }
+
+    /**
+     * Replace item with same key, rebound with payload of
+     * {@link #getChangePayload(Object, Object)}.
+     */
+    public void update(T item) {
+        long key = getItemKey(item);
+        List<T> items = new ArrayList<>(mItems);
+        for (int i = 0; i < items.size(); i++) {
+            if (getItemKey(items.get(i)) == key) {
+                items.set(i, item);
+                submit(items, null);
+                return;
+            }
+        }
+    }
+
+    public void clear() {
+        cancelLocalRead();
+        submit(Collections.<T>emptyList(), null);
+    }
+
+    /**
+     * Insert data to head of list in this adapter.
+     */
+    public void insertData(List<T> fetchedData) {
+        if (Checker.isEmpty(fetchedData)) return;
+        List<T> items = new ArrayList<>(fetchedData);
+        items.addAll(mItems);
+        submit(items, null);
+    }
+
+    /**
+     * Append data to end of list in this adapter.
+     */
+    public void appendData(List<T> fetchedData) {
+        if (Checker.isEmpty(fetchedData)) return;
+        List<T> items = new ArrayList<>(mItems);
+        items.addAll(fetchedData);
+        submit(items, null);
+    }
+
+    private void submit(List<T> items, Runnable commitCallback) {
+        // submitted list is never mutated, every mutation works on a copy
+        mItems = items;
+        mDiffer.submitList(items, commitCallback);
+    }
+
+    //*************************************************************************
+    // Abstract Method
+    //*************************************************************************
+
+    /**
+     * @return id which identifies the item across lists, used as stable id.
+     */
+    protected abstract long getItemKey(T item);
+
+    protected abstract void onBindItem(VH holder, T item);
+
+    /**
+     * Called on background thread.
+     */
+    protected abstract List<T> fetchMoreFromLocal(int offset);
+
+    protected abstract void fetchMoreFromServer();
+
+    protected abstract void refresh();
+
+    protected abstract void setLoadingView(LoadAction action);
+
+    protected abstract void stopLoadingView(boolean noMoreData);
+
+    protected void preFetchMore() {}
+
+    /**
+     * Called when reloaded data is displayed, skipped if another mutation
+     * supersedes it before diffing is done.
+     */
+    protected void onReloadDataCompleted() {}
+
+    /**
+     * Called on background thread.
+     */
+    protected boolean areContentsTheSame(T oldItem, T newItem) {
+        return oldItem.equals(newItem);
+    }
+
+    /**
+     * Called on background thread.
+     *
+     * @return payload describes what is changed in the item, or null to
+     * rebind the whole row.
+     */
+    protected Object getChangePayload(T oldItem, T newItem) {
+        return null;
+    }
+
+    /**
+     * Rebind changed parts of the row, payloads are returned by
+     * {@link #getChangePayload(Object, Object)}. Default rebinds whole row.
+     */
+    protected void onBindPayloads(VH holder, T item, List<Object> payloads) {
+        onBindItem(holder, item);
+    }
+
+    //*************************************************************************
+    // Public Method
+    //*************************************************************************
+
+    /**
+     * Must be called on main thread. Local data is read on background thread,
+     * see {@link LocalRead}.
+     */
+    public void loadData(LoadAction action) {
+        mLoader.loadData(action);
+    }
+
+    //*************************************************************************
+    // Array Data Methods
+    //*************************************************************************
+
+    /**
+     * Reload data from local database on background thread. Unlike
+     * {@link PaginalAdapter}, old and reloaded list are diffed in one pass,
+     * unchanged rows are not rebound.
+     */
+    public void reloadData(boolean afterRefreshFromServer) {
+        mLoader.reloadData(afterRefreshFromServer, null, null);
+    }
+
+    /**
+     * @param onReloaded called on main thread when reloaded data is applied.
+     * @param onDropped called on main thread instead, if the read is dropped
+     *                  by a newer one or by {@link #cancelLocalRead()}.
+     */
+    public void reloadData(boolean afterRefreshFromServer, Runnable onReloaded,
+                           Runnable onDropped) {
+        mLoader.reloadData(afterRefreshFromServer, onReloaded, onDropped);
+    }
+
+    /**
+     * Drop local read in progress.
+     */
+    protected void cancelLocalRead() {
+        mLoader.cancelLocalRead();
+    }
+
+    /**
+     * check if there is more data from server that serve pulling
+     */
+    public void checkHasMoreAfterFetchServerData(List<T> fetchedData) {
+        mLoader.checkHasMoreAfterFetchServerData(fetchedData);
+    }
+
+    public boolean hasNoMoreFromServer() {
+        return mLoader.hasNoMoreFromServer();
+    }
+}
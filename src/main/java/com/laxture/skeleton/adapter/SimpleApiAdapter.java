@@ -6,8 +6,9 @@ import android.widget.ArrayAdapter;
 import com.laxture.lib.RuntimeContext;
 import com.laxture.lib.task.AbstractTask;
 import com.laxture.lib.task.TaskListener;
-import com.laxture.lib.task.TaskManager;
 import com.laxture.skeleton.request.AbstractApiTask;
+import com.laxture.skeleton.request.ApiMetrics;
+import com.laxture.skeleton.request.TaskScheduler;
 
 import java.util.List;
 
@@ -15,6 +16,11 @@ public abstract class SimpleApiAdapter<T, ApiResult> extends ArrayAdapter<T> {
 
     private AbstractApiTask<ApiResult> mApiTask;
 
+    private AdapterDataCache mDataCache;
+    private List<T> mCachedData;
+
+    private TaskScheduler.Priority mPriority = TaskScheduler.Priority.UserVisible;
+
     public SimpleApiAdapter(AbstractApiTask<ApiResult> apiTask) {
         super(RuntimeContext.getApplication(), 0);
         mApiTask = apiTask;
@@ -22,7 +28,20 @@ public abstract class SimpleApiAdapter<T, ApiResult> extends ArrayAdapter<T> {
         mApiTask.addFinishedListener(new TaskListener.TaskFinishedListener<ApiResult>() {
             @Override
             public void onTaskFinished(ApiResult result) {
+                boolean timed = ApiMetrics.isEnabled();
+                long start = timed ? System.nanoTime() : 0;
                 List<T> resultList = convertApiResultToData(result);
+                if (timed) {
+                    ApiMetrics.record(mApiTask.getUrl(), ApiMetrics.Phase.Convert,
+                            System.nanoTime() - start, 0);
+                }
+                if (mDataCache != null) {
+                    mDataCache.put(mApiTask.getRequestKey(), resultList);
+                    // cached data is still valid, no need to rebind
+                    boolean unchanged = resultList != null && resultList.equals(mCachedData);
+                    mCachedData = null;
+                    if (unchanged) return;
+                }
 
                 clear();
                 resetAllData(resultList);
@@ -113,8 +132,31 @@ public abstract class SimpleApiAdapter<T, ApiResult> extends ArrayAdapter<T> {
     // Public Method
     //*************************************************************************
 
+    /**
+     * Render cached data immediately when loading, then revalidate it from
+     * server. Data is swapped only if server result is not equal to cached one,
+     * so T should implement equals() to benefit from it.
+     */
+    public void setDataCache(AdapterDataCache dataCache) {
+        mDataCache = dataCache;
+    }
+
+    /**
+     * Lane of the load task in {@link TaskScheduler}, default is
+     * {@link TaskScheduler.Priority#UserVisible}. Task in flight is moved too,
+     * e.g. raise priority when a prefetched list becomes visible.
+     */
+    public void setPriority(TaskScheduler.Priority priority) {
+        mPriority = priority;
+        TaskScheduler.getDefault().setPriority(mApiTask, priority);
+    }
+
     public void loadData() {
-        TaskManager.runImmediately(mApiTask);
+        if (mDataCache != null) {
+            mCachedData = mDataCache.get(mApiTask.getRequestKey());
+            if (mCachedData != null) resetAllData(mCachedData);
+        }
+        TaskScheduler.getDefault().run(mApiTask, mPriority);
     }
 
     //*************************************************************************
@@ -0,0 +1,145 @@
+package com.laxture.skeleton.adapter;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.laxture.lib.task.TaskException;
+import com.laxture.lib.task.TaskListener;
+import com.laxture.lib.util.LLog;
+import com.laxture.skeleton.request.AbstractApiTask;
+import com.laxture.skeleton.request.TaskScheduler;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Track outstanding API tasks of an adapter and stop them with the lifecycle
+ * of its host. When host stops, tasks are cancelled, or moved to
+ * {@link TaskScheduler.Priority#Prefetch} lane if prefetch is enabled, so they
+ * still fill the caches without competing with the next screen. When host is
+ * destroyed tasks are always cancelled.
+ *
+ * All methods are called on main thread.
+ */
+class TaskLifecycleBinding implements LifecycleEventObserver {
+
+    // outstanding task -> priority it was scheduled with
+    private final Map<AbstractApiTask<?>, TaskScheduler.Priority> mTasks = new IdentityHashMap<>();
+
+    private final Runnable mOnCancelled;
+    private Lifecycle mLifecycle;
+    private boolean mPrefetchWhenStopped;
+    private boolean mStopped;
+
+    /**
+     * @param onCancelled called after outstanding tasks are cancelled, to
+     *                    reset loading state of adapter.
+     */
+    TaskLifecycleBinding(Runnable onCancelled) {
+        mOnCancelled = onCancelled;
+    }
+
+    void bind(LifecycleOwner owner, boolean prefetchWhenStopped) {
+        unbind();
+        mLifecycle = owner.getLifecycle();
+        mPrefetchWhenStopped = prefetchWhenStopped;
+        mStopped = !mLifecycle.getCurrentState().isAtLeast(Lifecycle.State.STARTED);
+        mLifecycle.addObserver(this);
+    }
+
+    void unbind() {
+        if (mLifecycle != null) mLifecycle.removeObserver(this);
+        mLifecycle = null;
+    }
+
+    /**
+     * Track a task before it is scheduled.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void track(final AbstractApiTask<?> task, TaskScheduler.Priority priority) {
+        mTasks.put(task, priority);
+        AbstractApiTask rawTask = task;
+        rawTask.addFinishedListener(new TaskListener.TaskFinishedListener() {
+            @Override
+            public void onTaskFinished(Object result) {
+                mTasks.remove(task);
+            }
+        });
+        rawTask.addFailedListener(new TaskListener.TaskFailedListener() {
+            @Override
+            public void onTaskFailed(Object result, TaskException ex) {
+                mTasks.remove(task);
+            }
+        });
+        rawTask.addCancelledListener(new TaskListener.TaskCancelledListener() {
+            @Override
+            public void onTaskCancelled(Object result) {
+                mTasks.remove(task);
+            }
+        });
+    }
+
+    /**
+     * @return priority a new task should be scheduled with.
+     */
+    TaskScheduler.Priority getPriority(TaskScheduler.Priority priority) {
+        return mStopped && mPrefetchWhenStopped ? TaskScheduler.Priority.Prefetch : priority;
+    }
+
+    void setPriority(TaskScheduler.Priority priority) {
+        for (Map.Entry<AbstractApiTask<?>, TaskScheduler.Priority> entry : mTasks.entrySet()) {
+            entry.setValue(priority);
+            TaskScheduler.getDefault().setPriority(entry.getKey(), getPriority(priority));
+        }
+    }
+
+    void cancelAll() {
+        if (mTasks.isEmpty()) return;
+        List<AbstractApiTask<?>> tasks = new ArrayList<>(mTasks.keySet());
+        mTasks.clear();
+        for (AbstractApiTask<?> task : tasks) {
+            TaskScheduler.getDefault().cancel(task);
+        }
+        LLog.d("Cancelled %d outstanding tasks", tasks.size());
+        if (mOnCancelled != null) mOnCancelled.run();
+    }
+
+    //*************************************************************************
+    //  LifecycleEventObserver
+    //*************************************************************************
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        switch (event) {
+            case ON_START:
+                mStopped = false;
+                for (Map.Entry<AbstractApiTask<?>, TaskScheduler.Priority> entry : mTasks.entrySet()) {
+                    TaskScheduler.getDefault().setPriority(entry.getKey(), entry.getValue());
+                }
+                break;
+
+            case ON_STOP:
+                mStopped = true;
+                if (!mPrefetchWhenStopped) {
+                    cancelAll();
+                    break;
+                }
+                for (AbstractApiTask<?> task : mTasks.keySet()) {
+                    TaskScheduler.getDefault().setPriority(task, TaskScheduler.Priority.Prefetch);
+                }
+                break;
+
+            case ON_DESTROY:
+                cancelAll();
+                unbind();
+                break;
+
+            default: // do nothing
+        }
+    }
+
+}
@@ -1,31 +1,134 @@
 package com.laxture.skeleton.request;
 
+import android.net.Uri;
+import android.os.SystemClock;
 import android.widget.Toast;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 import com.laxture.lib.RuntimeContext;
+import com.laxture.lib.cache.storage.TempStorage;
 import com.laxture.lib.connectivity.http.HttpTaskConfig;
 import com.laxture.lib.connectivity.http.HttpTextTask;
 import com.laxture.lib.java8.Optional;
 import com.laxture.lib.task.TaskException;
 import com.laxture.lib.task.TaskListener;
-import com.laxture.lib.util.DeviceUtil;
 import com.laxture.lib.util.LLog;
-import com.laxture.skeleton.Constants;
+import com.laxture.lib.util.UnHandledException;
 import com.laxture.skeleton.R;
+import com.laxture.skeleton.util.GsonUtil;
+import com.laxture.skeleton.util.ServerTime;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public abstract class AbstractApiTask<Result> extends HttpTextTask<Result> {
 
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_VALUE_GZIP = "gzip";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_DATE = "Date";
+    private static final String HEADER_AGE = "Age";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_VALUE_FORM = "application/x-www-form-urlencoded; charset=utf-8";
+
     protected JsonObject resultJson;
 
     private Long mTotal;
 
+    private final String mUrl;
+    private final HttpTaskConfig mConfig;
+    private final TreeMap<String, String> mArguments = new TreeMap<>();
+
+    // retry states
+    private RetryPolicy mRetryPolicy = defaultRetryPolicy;
+    private boolean mCircuitBreakerEnabled = defaultCircuitBreakerEnabled;
+    // null to decide by request method
+    private Boolean mIdempotent;
+
+    // null to send request by HttpTextTask
+    private ApiTransport mTransport = defaultTransport;
+    private ApiResponse mTransportResponse;
+
+    // headers put by applyDefaultHeaders(), replaced on every send
+    private final HashSet<String> mDefaultHeaderKeys = new HashSet<>();
+
+    // time budget states
+    private Deadline mDeadline;
+    private int mBaseConnectTimeout;
+    private int mBaseReadTimeout;
+    private boolean mDeadlineSettled;
+    // response body being read, closed when deadline expires in Cache mode
+    private volatile InputStream mAttemptStream;
+
+    // elapsed realtime when current attempt was started, for ServerTime if
+    // transport doesn't tell when request was sent
+    private long mAttemptRealtime;
+
+    // set when ApiMetrics is enabled
+    private ApiMetrics.Timing mTiming;
+    private long mResponseSize;
+
+    // set when run by ApiRequestCoalescer
+    ApiRequestCoalescer.Call mCoalescedCall;
+
+    // set when response is fetched by ApiBatcher
+    BatchProtocol.Part mBatchedResponse;
+
+    // conditional request states
+    private ResponseCache mResponseCache;
+    private boolean mRequestedWithValidators;
+    private boolean mCacheMissed;
+    private boolean mSkipValidators;
+    private boolean mFormatError;
+
+    // streaming decode states
+    private boolean mStreamingDecode;
+    private boolean mRetainResponse;
+    private String mRetainedText;
+    private Result mDecodedResult;
+    private boolean mZeroTree;
+    private ApiEnvelope mEnvelope;
+
+    // spool-to-disk states
+    private int mSpoolThreshold;
+    private boolean mSpooledToDisk;
+
     public Long getTotal() {
         return Optional.ofNullable(mTotal).orElse(0L);
     }
@@ -35,20 +138,519 @@ public abstract class AbstractApiTask<Result> extends HttpTextTask<Result> {
     }
 
     public AbstractApiTask(String url) {
-        super(url, defaultHttpTaskConfig);
-        init();
+        this(url, defaultHttpTaskConfig);
     }
 
     public AbstractApiTask(String url, HttpTaskConfig config) {
-        super(url, config);
+        this(forkConfig(config), url);
+    }
+
+    // every task owns a copy of config, so per-task headers won't leak to
+    // shared config.
+    private AbstractApiTask(HttpTaskConfig taskConfig, String url) {
+        super(url, taskConfig);
+        mUrl = url;
+        mConfig = taskConfig;
         init();
     }
 
     public abstract void init();
 
+    public String getUrl() {
+        return mUrl;
+    }
+
+    protected HttpTaskConfig getTaskConfig() {
+        return mConfig;
+    }
+
+    @Override
+    protected Result run() {
+        mResponseSize = 0;
+        if (!ApiMetrics.isEnabled()) return executeAndRelease();
+
+        mTiming = new ApiMetrics.Timing();
+        try {
+            return executeAndRelease();
+        } finally {
+            mTiming.report(mUrl, mResponseSize);
+            mTiming = null;
+        }
+    }
+
+    private Result executeAndRelease() {
+        try {
+            return execute();
+        } finally {
+            // typed result is generated, nothing else should be kept by task
+            if (mZeroTree) {
+                resultJson = null;
+                mRetainedText = null;
+                mDecodedResult = null;
+            }
+        }
+    }
+
+    /**
+     * @return size of response body received from network, or from batch
+     * response. Available after task is finished.
+     */
+    public long getResponseSize() {
+        return mResponseSize;
+    }
+
+    private Result execute() {
+        BatchProtocol.Part batchedResponse = mBatchedResponse;
+        if (batchedResponse != null) {
+            mBatchedResponse = null;
+            return runBatched(batchedResponse);
+        }
+
+        ApiRequestCoalescer.Call call = mCoalescedCall;
+        if (call == null) return runWithRetry();
+
+        try {
+            return call.isLeader(this) ? runAsLeader(call) : runAsSubscriber(call);
+        } finally {
+            mCoalescedCall = null;
+        }
+    }
+
+    private Result runAsLeader(ApiRequestCoalescer.Call call) {
+        Result result = null;
+        TaskException error = null;
+        try {
+            result = runWithRetry();
+            error = getErrorDetails();
+        } catch (RuntimeException e) {
+            error = new TaskException(ApiException.SHARED_REQUEST_FAILED,
+                    RuntimeContext.getString(R.string.msg_http_err_server_error), e);
+            throw e;
+        } finally {
+            // cancelled leader hands the request over to a subscriber
+            if (!isCancelled()) {
+                if (result == null && error == null) {
+                    error = new TaskException(ApiException.SHARED_REQUEST_FAILED,
+                            RuntimeContext.getString(R.string.msg_http_err_server_error));
+                }
+                call.publish(result, error, mTotal);
+            }
+        }
+        return result;
+    }
+
+    private Result runWithRetry() {
+        if (mSpoolThreshold > 0 && !mStreamingDecode) throw new UnHandledException(
+                "Spool threshold requires streaming decode, " + getClass().getName());
+        CircuitBreaker breaker = mCircuitBreakerEnabled ? CircuitBreaker.forHost(getHost()) : null;
+        int retryCount = 0;
+        mSkipValidators = false;
+        applyDefaultHeaders();
+        while (true) {
+            if (mDeadline != null && !applyDeadline()) return onDeadlineBlown();
+            if (breaker != null && !breaker.allowRequest()) {
+                LLog.w("Circuit of %s is open, fail fast %s", breaker.host, mUrl);
+                setErrorDetails(new ApiException(ApiException.CIRCUIT_OPEN,
+                        RuntimeContext.getString(R.string.msg_http_err_server_error)));
+                return null;
+            }
+
+            applyValidators();
+            mAttemptRealtime = SystemClock.elapsedRealtime();
+            Result result;
+            try {
+                result = mTransport != null ? runWithTransport() : super.run();
+            } catch (RuntimeException e) {
+                if (breaker != null) breaker.onAbandoned();
+                throw e;
+            }
+            TaskException error = getErrorDetails();
+            if (mCacheMissed && !mSkipValidators && !isCancelled()) {
+                // entry is evicted after validators are sent, ask for full response
+                LLog.d("Cached response of %s is gone, request again without validators", mUrl);
+                if (breaker != null) breaker.onSuccess();
+                mSkipValidators = true;
+                setErrorDetails(null);
+                continue;
+            }
+            if (breaker != null) {
+                if (isCancelled()) breaker.onAbandoned();
+                else if (error != null && isHostFailure(error)) breaker.onFailure();
+                else breaker.onSuccess();
+            }
+            if (mDeadline != null && error != null && !isCancelled() && mDeadline.isExpired()) {
+                return onDeadlineBlown();
+            }
+            if (error == null || isCancelled()
+                    || !mRetryPolicy.shouldRetry(retryCount, isIdempotent(), error)) {
+                if (mDeadline != null && error == null) settleDeadline(false);
+                return result;
+            }
+
+            long delay = mRetryPolicy.getDelay(retryCount);
+            // retry would be too late anyway
+            if (mDeadline != null && delay >= mDeadline.remaining()) return onDeadlineBlown();
+            retryCount++;
+            LLog.d("Retry %s in %d ms, retryCount=%d", mUrl, delay, retryCount);
+            mRetryPolicy.notifyRetry(this, retryCount, delay, error);
+            // failed attempt is still connect time, but waiting is not
+            if (mTiming != null) mTiming.mark(ApiMetrics.Phase.Connect);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            } finally {
+                if (mTiming != null) mTiming.mark(ApiMetrics.Phase.Backoff);
+            }
+            // cancelled while waiting, don't make another attempt
+            if (isCancelled()) return result;
+            setErrorDetails(null);
+            resultJson = null;
+            mDecodedResult = null;
+        }
+    }
+
+    //*************************************************************************
+    //  Deadline
+    //*************************************************************************
+
+    /**
+     * Run within time budget of deadline, see {@link Deadline}. Pass null to
+     * restore timeouts of task config.
+     */
+    public void setDeadline(Deadline deadline) {
+        if (mDeadline == null) {
+            mBaseConnectTimeout = mConfig.connectTimeout;
+            mBaseReadTimeout = mConfig.readTimeout;
+        }
+        mDeadline = deadline;
+        mDeadlineSettled = false;
+        if (deadline != null) {
+            deadline.register(this);
+        } else {
+            mConfig.connectTimeout = mBaseConnectTimeout;
+            mConfig.readTimeout = mBaseReadTimeout;
+        }
+    }
+
+    public Deadline getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Shrink timeouts to remaining budget.
+     *
+     * @return false if budget is already blown.
+     */
+    private boolean applyDeadline() {
+        long remaining = mDeadline.remaining();
+        if (remaining <= 0) return false;
+        mConfig.connectTimeout = shrinkTimeout(mBaseConnectTimeout, remaining);
+        mConfig.readTimeout = shrinkTimeout(mBaseReadTimeout, remaining);
+        return true;
+    }
+
+    // 0 means no timeout
+    private static int shrinkTimeout(int timeout, long remaining) {
+        return (int) (timeout > 0 ? Math.min(timeout, remaining) : Math.min(remaining, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Report deadline of this task as met or blown, only the first call counts.
+     *
+     * @return false if it has been settled already.
+     */
+    synchronized boolean settleDeadline(boolean blown) {
+        if (mDeadlineSettled) return false;
+        mDeadlineSettled = true;
+        ApiMetrics.recordDeadline(mUrl, blown);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Result onDeadlineBlown() {
+        settleDeadline(true);
+        LLog.w("Deadline of %s is blown, fallback to %s", mUrl, mDeadline.getFallback());
+        if (mDeadline.getFallback() == Deadline.Fallback.Cache) {
+            setErrorDetails(null);
+            Result result = (Result) mDeadline.getCacheProvider().resolve(this);
+            if (result != null) return result;
+            setErrorDetails(new ApiException(ApiException.DEADLINE_EXCEEDED,
+                    RuntimeContext.getString(R.string.msg_http_err_server_error)));
+            return null;
+        }
+        cancel();
+        return null;
+    }
+
+    /**
+     * Close response being read, so the attempt fails right away and task
+     * falls back to cache instead of waiting for a slow response.
+     */
+    void abortAttempt() {
+        InputStream stream = mAttemptStream;
+        if (stream == null) return;
+        LLog.d("Deadline expired, abort response of %s", mUrl);
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LLog.d("Failed to close response of %s, %s", mUrl, e.getMessage());
+        }
+    }
+
+    /**
+     * Decode cached response of {@link #getResponseCache()} as if it were
+     * received from network.
+     *
+     * @return null if there is no cached response, or it cannot be decoded.
+     */
+    Result resolveFromResponseCache() {
+        if (mResponseCache == null) return null;
+        InputStream inputStream = mResponseCache.openCached(getRequestKey());
+        if (inputStream == null) return null;
+        try {
+            try {
+                decodeResponse(inputStream);
+            } finally {
+                inputStream.close();
+            }
+            if (mFormatError) {
+                setErrorDetails(null);
+                return null;
+            }
+            LLog.d("Resolved %s from response cache", mUrl);
+            return generateResult();
+        } catch (IOException e) {
+            LLog.w("Failed to read cached response of %s", e, mUrl);
+            return null;
+        }
+    }
+
+    //*************************************************************************
+    //  Transport
+    //*************************************************************************
+
+    /**
+     * Send request through the transport instead of HttpTextTask, null to
+     * restore default.
+     */
+    public void setTransport(ApiTransport transport) {
+        mTransport = transport;
+    }
+
+    public ApiTransport getTransport() {
+        return mTransport;
+    }
+
+    private Result runWithTransport() {
+        if (isCancelled()) return null;
+        ApiResponse response = null;
+        try {
+            response = mTransport.execute(buildRequest());
+            mTransportResponse = response;
+            if (response.code != HttpURLConnection.HTTP_NOT_MODIFIED
+                    && (response.code < HttpURLConnection.HTTP_OK
+                    || response.code >= HttpURLConnection.HTTP_MULT_CHOICE)) {
+                LLog.w("Request %s failed with status %d", mUrl, response.code);
+                String message = RuntimeContext.getString(R.string.msg_http_err_server_error);
+                // server error might be recovered by retry, client error won't
+                setErrorDetails(response.code >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                        ? new TaskException(ApiException.HTTP_STATUS_ERROR, message)
+                        : new ApiException(ApiException.HTTP_STATUS_ERROR, message));
+                return null;
+            }
+
+            processResponse(response.body);
+            if (getErrorDetails() != null || mFormatError || isCancelled()) return null;
+            return generateResult();
+
+        } catch (IOException e) {
+            LLog.w("Request %s failed", e, mUrl);
+            setErrorDetails(new TaskException(ApiException.TRANSPORT_ERROR,
+                    RuntimeContext.getString(R.string.msg_http_err_server_error), e));
+            return null;
+
+        } finally {
+            if (response != null) response.close();
+            mTransportResponse = null;
+        }
+    }
+
+    private ApiRequest buildRequest() throws IOException {
+        HashMap<String, String> headers = new HashMap<>(mConfig.headers);
+        byte[] body = null;
+        if (!mArguments.isEmpty()) {
+            body = encodeForm(new StringBuilder(), mArguments).toString().getBytes("UTF-8");
+            headers.put(HEADER_CONTENT_TYPE, HEADER_VALUE_FORM);
+
+            if (mConfig instanceof ApiTaskConfig && ((ApiTaskConfig) mConfig).gzipRequest) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2 + 16);
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                gzip.write(body);
+                gzip.close();
+                body = out.toByteArray();
+                headers.put(HEADER_CONTENT_ENCODING, HEADER_VALUE_GZIP);
+            }
+        }
+        return new ApiRequest(mUrl, body != null ? ApiRequest.METHOD_POST : ApiRequest.METHOD_GET,
+                headers, body, mConfig.connectTimeout, mConfig.readTimeout);
+    }
+
+    private int responseCode() {
+        return mTransportResponse != null ? mTransportResponse.code : getResponseCode();
+    }
+
+    private String responseHeader(String name) {
+        return mTransportResponse != null ? mTransportResponse.getHeader(name) : getResponseHeader(name);
+    }
+
+    private String getHost() {
+        String host = Uri.parse(mUrl).getHost();
+        return host != null ? host : mUrl;
+    }
+
+    // identical request is done, share its result
+    @SuppressWarnings("unchecked")
+    private Result runAsSubscriber(ApiRequestCoalescer.Call call) {
+        if (call.getError() != null) {
+            setErrorDetails(call.getError());
+            return null;
+        }
+        setTotal(call.getTotal());
+        return (Result) call.getResult();
+    }
+
+    private Result runBatched(BatchProtocol.Part part) {
+        if (part.error != null) {
+            setErrorDetails(part.error);
+            return null;
+        }
+        if (part.status < HttpURLConnection.HTTP_OK
+                || part.status >= HttpURLConnection.HTTP_MULT_CHOICE || part.body == null) {
+            LLog.w("Batched request %s failed with status %d", mUrl, part.status);
+            setErrorDetails(new ApiException(ApiException.BATCH_RESPONSE_FAILED,
+                    RuntimeContext.getString(R.string.msg_http_err_server_error)));
+            return null;
+        }
+
+        try {
+            mResponseSize = part.body.length;
+            decodeResponse(new ByteArrayInputStream(part.body));
+        } catch (IOException e) {
+            setErrorDetails(new ApiException(ApiException.RESPONSE_DATA_FORMAT_ERROR,
+                    RuntimeContext.getString(R.string.msg_http_err_server_error), e));
+            return null;
+        }
+        return mFormatError ? null : generateResult();
+    }
+
     @Override
     protected void processResponse(InputStream inputStream) throws IOException {
+        if (mTiming != null) mTiming.mark(ApiMetrics.Phase.Connect);
+        long sentRealtime = mTransportResponse != null && mTransportResponse.getSentRealtime() > 0
+                ? mTransportResponse.getSentRealtime() : mAttemptRealtime;
+        ServerTime.onResponseDate(responseHeader(HEADER_DATE), responseHeader(HEADER_AGE),
+                sentRealtime, SystemClock.elapsedRealtime());
+        ApiTrafficStats.CountingInputStream wireStream = ApiTrafficStats.countWire(inputStream);
+        mAttemptStream = inputStream;
+        try {
+            // deadline might expire before stream is published to abortAttempt()
+            if (mDeadline != null && mDeadline.getFallback() == Deadline.Fallback.Cache
+                    && mDeadline.isExpired()) {
+                throw new InterruptedIOException("Deadline expired before response of " + mUrl);
+            }
+            processResponseBody(wireStream);
+        } finally {
+            mAttemptStream = null;
+            mResponseSize += wireStream.getCount();
+        }
+    }
+
+    private void processResponseBody(InputStream inputStream) throws IOException {
+        // 304 has no body to decode, even if it carries Content-Encoding
+        if (mResponseCache != null && responseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            String key = getRequestKey();
+            InputStream cachedStream = mResponseCache.openNotModified(key);
+            if (cachedStream == null) {
+                mCacheMissed = true;
+                setErrorDetails(new ApiException(ApiException.RESPONSE_CACHE_MISSED,
+                        RuntimeContext.getString(R.string.msg_http_err_server_error)));
+                return;
+            }
+            LLog.d("Response not modified, served from cache :: %s", key);
+            try {
+                decodeResponse(cachedStream);
+            } finally {
+                cachedStream.close();
+            }
+            return;
+        }
+
+        if (HEADER_VALUE_GZIP.equalsIgnoreCase(responseHeader(HEADER_CONTENT_ENCODING))) {
+            // GZIPInputStream reads gzip header at once, which empty body
+            // such as 204 doesn't have
+            PushbackInputStream pushbackStream = new PushbackInputStream(inputStream);
+            int firstByte = responseCode() != HttpURLConnection.HTTP_NO_CONTENT
+                    ? pushbackStream.read() : -1;
+            if (firstByte != -1) {
+                pushbackStream.unread(firstByte);
+                ApiTrafficStats.onGzipResponse();
+                inputStream = new GZIPInputStream(pushbackStream);
+            } else {
+                inputStream = pushbackStream;
+            }
+        }
+        inputStream = ApiTrafficStats.countDecoded(inputStream);
+
+        ResponseCache.CachingInputStream cachingStream = null;
+        if (mResponseCache != null) {
+            String key = getRequestKey();
+            inputStream = mResponseCache.openWriteThrough(key,
+                    responseHeader(HEADER_ETAG), responseHeader(HEADER_LAST_MODIFIED),
+                    mRequestedWithValidators, inputStream);
+            if (inputStream instanceof ResponseCache.CachingInputStream)
+                cachingStream = (ResponseCache.CachingInputStream) inputStream;
+        }
+
+        try {
+            decodeResponse(inputStream);
+        } catch (IOException e) {
+            if (cachingStream != null) cachingStream.abort();
+            throw e;
+        }
+
+        if (cachingStream != null) {
+            if (mFormatError) {
+                cachingStream.abort();
+            } else try {
+                cachingStream.commit();
+            } catch (IOException e) {
+                LLog.w("Failed to cache response of %s", e, mUrl);
+                cachingStream.abort();
+            }
+        }
+    }
+
+    private void decodeResponse(InputStream inputStream) throws IOException {
+        mFormatError = false;
+        mSpooledToDisk = false;
+        if (mSpoolThreshold > 0) {
+            byte[] head = readUpTo(inputStream, mSpoolThreshold + 1);
+            if (head.length > mSpoolThreshold) {
+                decodeSpooled(head, inputStream);
+                return;
+            }
+            inputStream = new ByteArrayInputStream(head);
+        }
+
+        if (mStreamingDecode) {
+            processResponseStreaming(inputStream);
+            return;
+        }
+
         super.processResponse(inputStream);
+        if (mTiming != null) mTiming.mark(ApiMetrics.Phase.Download);
 
         JsonObject json = null;
         try {
@@ -56,33 +658,476 @@ public abstract class AbstractApiTask<Result> extends HttpTextTask<Result> {
             LLog.d("Response :: %s", str);
             json = (JsonObject) JsonParser.parseString(str);
         } catch (JsonSyntaxException e) {
-            LLog.w("JSON format error", e);
-            setErrorDetails(new ApiException(ApiException.RESPONSE_DATA_FORMAT_ERROR,
-                    RuntimeContext.getString(R.string.msg_http_err_server_error), e));
+            reportFormatError(e);
         }
+        if (mTiming != null) mTiming.mark(ApiMetrics.Phase.Parse);
 
         if (json != null) resultJson = json;
     }
 
     public JsonObject getResultJson() {
+        if (resultJson == null && mRetainedText != null) {
+            try {
+                resultJson = (JsonObject) JsonParser.parseString(mRetainedText);
+            } catch (JsonSyntaxException e) {
+                LLog.w("JSON format error", e);
+            }
+        }
         return resultJson;
     }
 
+    //*************************************************************************
+    //  Streaming Decode
+    //*************************************************************************
+
+    /**
+     * Decode response straight from network stream into typed result by
+     * {@link #decodeResult(JsonReader)}, instead of buffering it as text and
+     * parsing it to {@link JsonObject} tree first. Subclass should call this in
+     * {@link #init()} and return {@link #getDecodedResult()} in generateResult().
+     */
+    protected void setStreamingDecode(boolean streamingDecode) {
+        mStreamingDecode = streamingDecode;
+    }
+
+    public boolean isStreamingDecode() {
+        return mStreamingDecode;
+    }
+
+    /**
+     * Keep response text in streaming mode, so {@link #getResponseText()} and
+     * {@link #getResultJson()} are still available. Off by default.
+     */
+    protected void setRetainResponse(boolean retainResponse) {
+        mRetainResponse = retainResponse && !mZeroTree;
+    }
+
+    @Override
+    public String getResponseText() {
+        return mStreamingDecode ? mRetainedText : super.getResponseText();
+    }
+
+    public Result getDecodedResult() {
+        return mDecodedResult;
+    }
+
+    /**
+     * Zero-tree mode for big responses. Response is decoded in streaming mode
+     * and never kept as text or {@link JsonObject}, and decoded result is
+     * released by task right after generateResult(), so the task object held
+     * by listeners and adapters doesn't retain response. Subclass should call
+     * this in {@link #init()}, together with {@link #setEnvelope(ApiEnvelope)}
+     * if total count is needed.
+     */
+    protected void setZeroTree(boolean zeroTree) {
+        mZeroTree = zeroTree;
+        if (zeroTree) {
+            mStreamingDecode = true;
+            mRetainResponse = false;
+        }
+    }
+
+    public boolean isZeroTree() {
+        return mZeroTree;
+    }
+
+    /**
+     * Decode response as envelope in streaming mode, Result is decoded from
+     * its data field and {@link #setTotal(Long)} from its total field.
+     */
+    protected void setEnvelope(ApiEnvelope envelope) {
+        mEnvelope = envelope;
+    }
+
+    /**
+     * Decode typed result from response stream. Default implementation
+     * delegate to {@link GsonUtil} with {@link #getResultType()}, or to
+     * envelope if it is set.
+     */
+    protected Result decodeResult(JsonReader reader) throws IOException {
+        if (mEnvelope != null) return mEnvelope.decode(this, reader, getResultType());
+        return GsonUtil.fromJson(reader, getResultType());
+    }
+
+    /**
+     * Resolve Result type from generic declaration of subclass. Subclass which
+     * is still generic should override this method.
+     */
+    protected Type getResultType() {
+        Class<?> clazz = getClass();
+        while (clazz != null && clazz != AbstractApiTask.class) {
+            Type superType = clazz.getGenericSuperclass();
+            if (superType instanceof ParameterizedType
+                    && ((ParameterizedType) superType).getRawType() == AbstractApiTask.class) {
+                Type resultType = ((ParameterizedType) superType).getActualTypeArguments()[0];
+                if (resultType instanceof Class || resultType instanceof ParameterizedType)
+                    return resultType;
+                break;
+            }
+            clazz = clazz.getSuperclass();
+        }
+        throw new UnHandledException("Cannot resolve Result type of "
+                + getClass().getName() + ", override getResultType().");
+    }
+
+    /**
+     * Decode typed result from raw response stream, e.g. into
+     * {@link com.laxture.skeleton.util.LazyJsonList}. Default implementation
+     * reads it as UTF-8 and delegate to {@link #decodeResult(JsonReader)}.
+     */
+    protected Result decodeResult(InputStream inputStream) throws IOException {
+        return decodeResult(new JsonReader(
+                new BufferedReader(new InputStreamReader(inputStream, "UTF-8"))));
+    }
+
+    private void processResponseStreaming(InputStream inputStream) throws IOException {
+        if (mRetainResponse) {
+            mRetainedText = readFully(new InputStreamReader(inputStream, "UTF-8"));
+            LLog.d("Response :: %s", mRetainedText);
+            inputStream = new ByteArrayInputStream(mRetainedText.getBytes("UTF-8"));
+        }
+
+        decodeStreaming(inputStream);
+        if (mTiming != null) mTiming.mark(ApiMetrics.Phase.Parse);
+    }
+
+    // only failure of underlying stream is thrown, everything else is format error
+    private void decodeStreaming(InputStream inputStream) throws IOException {
+        try {
+            mDecodedResult = decodeResult(inputStream);
+        } catch (JsonParseException e) {
+            reportFormatError(e);
+        } catch (MalformedJsonException | EOFException
+                | IllegalStateException | NumberFormatException e) {
+            // thrown by JsonReader used directly, e.g. by ApiEnvelope
+            reportFormatError(new JsonSyntaxException(e));
+        }
+    }
+
+    //*************************************************************************
+    //  Spool to Disk
+    //*************************************************************************
+
+    /**
+     * Guard against oversized response. Body larger than threshold is spooled
+     * to a temp file instead of being buffered as text, then decoded from the
+     * file incrementally by {@link #decodeResult(InputStream)}, see
+     * {@link #isSpooledToDisk()}. Only works with streaming decode, task
+     * without it fails before request is sent. Spooled response is not
+     * retained as text even with {@link #setRetainResponse(boolean)}.
+     *
+     * @param thresholdBytes 0 to disable, which is the default.
+     */
+    public void setSpoolThreshold(int thresholdBytes) {
+        // one more byte than threshold is read to detect oversized body
+        mSpoolThreshold = Math.min(Math.max(0, thresholdBytes), Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * @return true if response exceeded spool threshold and was decoded from
+     * temp file, false if it was decoded in memory.
+     */
+    public boolean isSpooledToDisk() {
+        return mSpooledToDisk;
+    }
+
+    private void decodeSpooled(byte[] head, InputStream inputStream) throws IOException {
+        File file = new TempStorage("api_response_" + System.nanoTime() + ".json").getFile();
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(head);
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = inputStream.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+            mSpooledToDisk = true;
+            LLog.d("Response of %s is %d bytes, decode it from %s", mUrl, file.length(), file);
+            if (mTiming != null) mTiming.mark(ApiMetrics.Phase.Download);
+
+            InputStream fileStream = new BufferedInputStream(new FileInputStream(file));
+            try {
+                decodeStreaming(fileStream);
+            } finally {
+                fileStream.close();
+            }
+            if (mTiming != null) mTiming.mark(ApiMetrics.Phase.Parse);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] readUpTo(InputStream inputStream, int limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(limit, 8192));
+        byte[] buffer = new byte[8192];
+        int remaining = limit;
+        int count;
+        while (remaining > 0
+                && (count = inputStream.read(buffer, 0, Math.min(buffer.length, remaining))) != -1) {
+            out.write(buffer, 0, count);
+            remaining -= count;
+        }
+        return out.toByteArray();
+    }
+
+    private void reportFormatError(JsonParseException e) {
+        LLog.w("JSON format error", e);
+        mFormatError = true;
+        setErrorDetails(new ApiException(ApiException.RESPONSE_DATA_FORMAT_ERROR,
+                RuntimeContext.getString(R.string.msg_http_err_server_error), e));
+    }
+
+    private static String readFully(Reader reader) throws IOException {
+        StringWriter writer = new StringWriter();
+        char[] buffer = new char[4096];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            writer.write(buffer, 0, count);
+        }
+        return writer.toString();
+    }
+
+    //*************************************************************************
+    //  Retry
+    //*************************************************************************
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.NONE;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Fail fast when the host keeps failing, see {@link CircuitBreaker}.
+     */
+    public void setCircuitBreakerEnabled(boolean enabled) {
+        mCircuitBreakerEnabled = enabled;
+    }
+
+    /**
+     * By default only GET, i.e. task without arguments, is taken as idempotent,
+     * since arguments are posted as form. Set true for read-style POST so it
+     * can be retried, non-idempotent tasks are not retried unless
+     * {@link RetryPolicy#retryNonIdempotent}.
+     */
+    public void setIdempotent(boolean idempotent) {
+        mIdempotent = idempotent;
+    }
+
+    public boolean isIdempotent() {
+        return mIdempotent != null ? mIdempotent : mArguments.isEmpty();
+    }
+
+    // client error and broken response mean the host is up, only broken
+    // connection and server error count against circuit breaker
+    private boolean isHostFailure(TaskException error) {
+        if (error instanceof ApiException) return false;
+        if (mTransport != null) return true;
+        int code = getResponseCode();
+        return code < HttpURLConnection.HTTP_BAD_REQUEST || code >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    //*************************************************************************
+    //  Arguments
+    //*************************************************************************
+
+    @Override
+    public void addArgument(String key, String value) {
+        super.addArgument(key, value);
+        recordArgument(key, value);
+    }
+
+    @Override
+    public void addArgument(String key, int value) {
+        super.addArgument(key, value);
+        recordArgument(key, Integer.toString(value));
+    }
+
+    @Override
+    public void addArgument(String key, boolean value) {
+        super.addArgument(key, value);
+        recordArgument(key, Boolean.toString(value));
+    }
+
+    @Override
+    public void addArgument(String key, long value) {
+        super.addArgument(key, value);
+        recordArgument(key, Long.toString(value));
+    }
+
+    @Override
+    public void addArgument(String key, float value) {
+        super.addArgument(key, value);
+        recordArgument(key, Float.toString(value));
+    }
+
+    @Override
+    public void addArgument(String key, double value) {
+        super.addArgument(key, value);
+        recordArgument(key, Double.toString(value));
+    }
+
+    @Override
+    public void addArgument(String key, long[] value) {
+        super.addArgument(key, value);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; value != null && i < value.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(value[i]);
+        }
+        recordArgument(key, sb.toString());
+    }
+
+    @Override
+    public void addArgument(String key, String[] value) {
+        super.addArgument(key, value);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; value != null && i < value.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(value[i]);
+        }
+        recordArgument(key, sb.toString());
+    }
+
+    private void recordArgument(String key, String value) {
+        mArguments.put(key, value);
+    }
+
+    /**
+     * @return arguments added to this task, in string form and sorted by key.
+     */
+    public Map<String, String> getArguments() {
+        return Collections.unmodifiableMap(mArguments);
+    }
+
+    /**
+     * Set header of this request only, it is also forwarded in batch envelope.
+     */
+    public void setHeader(String name, String value) {
+        mDefaultHeaderKeys.remove(name);
+        mConfig.headers.put(name, value);
+    }
+
+    /**
+     * Headers of this request to forward in batch envelope. Transport level
+     * headers are left to the batch request itself.
+     */
+    Map<String, String> getBatchHeaders() {
+        HashMap<String, String> headers = new HashMap<>(mConfig.headers);
+        headers.remove(HEADER_ACCEPT_ENCODING);
+        headers.remove(HEADER_IF_NONE_MATCH);
+        headers.remove(HEADER_IF_MODIFIED_SINCE);
+        return headers;
+    }
+
+    /**
+     * Identify identical requests, i.e. same task class, url, arguments and
+     * request headers. Tasks with same key share one call in
+     * {@link ApiRequestCoalescer} and one entry in {@link ResponseCache}.
+     */
+    public String getRequestKey() {
+        StringBuilder sb = new StringBuilder(getClass().getName()).append(' ').append(mUrl);
+        TreeMap<String, String> headers = new TreeMap<>();
+        for (Map.Entry<String, String> header : getBatchHeaders().entrySet()) {
+            headers.put(header.getKey().toLowerCase(Locale.US), header.getValue());
+        }
+        try {
+            encodeForm(sb.append('?'), mArguments);
+            encodeForm(sb.append('#'), headers);
+        } catch (UnsupportedEncodingException e) {
+            throw new UnHandledException(e);
+        }
+        return sb.toString();
+    }
+
+    private static StringBuilder encodeForm(StringBuilder sb, Map<String, String> params)
+            throws UnsupportedEncodingException {
+        boolean first = true;
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            if (!first) sb.append('&');
+            first = false;
+            sb.append(URLEncoder.encode(entry.getKey(), "UTF-8")).append('=')
+              .append(URLEncoder.encode(entry.getValue(), "UTF-8"));
+        }
+        return sb;
+    }
+
+    //*************************************************************************
+    //  Response Cache
+    //*************************************************************************
+
+    /**
+     * Enable conditional request by ETag / Last-Modified. Pass null to disable.
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        mResponseCache = responseCache;
+    }
+
+    public ResponseCache getResponseCache() {
+        return mResponseCache;
+    }
+
+    // called before every attempt, so validators match the entry at send time
+    private void applyValidators() {
+        mConfig.headers.remove(HEADER_IF_NONE_MATCH);
+        mConfig.headers.remove(HEADER_IF_MODIFIED_SINCE);
+        mRequestedWithValidators = false;
+        mCacheMissed = false;
+        if (mResponseCache == null || mSkipValidators) return;
+
+        ResponseCache.Entry entry = mResponseCache.get(getRequestKey());
+        if (entry == null) return;
+        if (entry.etag != null) mConfig.headers.put(HEADER_IF_NONE_MATCH, entry.etag);
+        if (entry.lastModified != null) mConfig.headers.put(HEADER_IF_MODIFIED_SINCE, entry.lastModified);
+        mRequestedWithValidators = true;
+    }
+
+    // resolved on worker thread, headers of task config take precedence.
+    // defaults of previous run are dropped first, so a re-run task picks up
+    // headers changed by ApiHeaders.invalidate()
+    private void applyDefaultHeaders() {
+        for (String key : mDefaultHeaderKeys) mConfig.headers.remove(key);
+        mDefaultHeaderKeys.clear();
+        for (Map.Entry<String, String> header : ApiHeaders.getHeaders().entrySet()) {
+            if (!mConfig.headers.containsKey(header.getKey())) {
+                mConfig.headers.put(header.getKey(), header.getValue());
+                mDefaultHeaderKeys.add(header.getKey());
+            }
+        }
+    }
+
+    private static HttpTaskConfig forkConfig(HttpTaskConfig config) {
+        HttpTaskConfig taskConfig = ApiTaskConfig.fork(config);
+        if (taskConfig instanceof ApiTaskConfig && ((ApiTaskConfig) taskConfig).acceptGzip) {
+            taskConfig.headers.put(HEADER_ACCEPT_ENCODING, HEADER_VALUE_GZIP);
+        }
+        return taskConfig;
+    }
+
     //*************************************************************************
     //  Default Task Listener
     //*************************************************************************
 
-    public static HttpTaskConfig defaultHttpTaskConfig = new HttpTaskConfig();
+    // default headers are provided by ApiHeaders when task is sent
+    public static HttpTaskConfig defaultHttpTaskConfig = new ApiTaskConfig();
     static {
         defaultHttpTaskConfig.maxRetryCount = 0;
         defaultHttpTaskConfig.headers = new HashMap<>();
-        defaultHttpTaskConfig.headers.put("platform", Integer.toString(Constants.REQ_ARG_PLATFORM_ANDROID));
-        defaultHttpTaskConfig.headers.put("appVersion", RuntimeContext.getVersionName());
-        defaultHttpTaskConfig.headers.put("device", DeviceUtil.getDeviceId());
-        defaultHttpTaskConfig.headers.put("os", android.os.Build.VERSION.RELEASE);
-        defaultHttpTaskConfig.headers.put("osVersion", Integer.toString(android.os.Build.VERSION.SDK_INT));
     }
 
+    public static RetryPolicy defaultRetryPolicy = RetryPolicy.NONE;
+
+    // null to send requests by HttpTextTask
+    public static ApiTransport defaultTransport = null;
+
+    public static boolean defaultCircuitBreakerEnabled = false;
+
     // TODO show/hide progress indicator
 
     protected static DefaultTaskFailedListener defaultTaskFailedListener
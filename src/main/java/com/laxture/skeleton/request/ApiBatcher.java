@@ -0,0 +1,212 @@
+package com.laxture.skeleton.request;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.gson.stream.JsonReader;
+import com.laxture.lib.RuntimeContext;
+import com.laxture.lib.task.TaskException;
+import com.laxture.lib.task.TaskListener;
+import com.laxture.lib.task.TaskManager;
+import com.laxture.lib.util.LLog;
+import com.laxture.skeleton.R;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Send several API tasks in one request to batch endpoint, see
+ * {@link BatchProtocol} for the wire format.
+ *
+ * Tasks submitted by {@link #submit(AbstractApiTask)} within the batch window
+ * are sent together, or they can be grouped explicitly by
+ * {@link #runBatch(AbstractApiTask[])}. When batch response arrives, every
+ * task is run by {@link TaskManager} with its own part of response, so it
+ * goes through processResponse() / generateResult() and its listeners as if
+ * it were sent alone. Headers of tasks are forwarded in the envelope, but
+ * tasks with {@link ResponseCache} are sent alone, since a batch can't carry
+ * their 304 responses.
+ *
+ * A batched task only decodes its part. Retry, ServerTime sampling and
+ * per-phase {@link ApiMetrics} are done by the batch request as a whole, so
+ * the task doesn't retry a failed part, only its total time is measured, and
+ * a {@link Deadline} in Cache mode can't abort its attempt, only cancel it.
+ */
+public class ApiBatcher {
+
+    public static final long DEFAULT_WINDOW = 50;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+
+    private final String mBatchUrl;
+    private long mWindow = DEFAULT_WINDOW;
+    private int mMaxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private ApiTransport mTransport;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<AbstractApiTask<?>> mPendingTasks = new ArrayList<>();
+
+    public ApiBatcher(String batchUrl) {
+        mBatchUrl = batchUrl;
+    }
+
+    public void setWindow(long windowMillis) {
+        mWindow = windowMillis;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Transport of batch requests, default is {@link AbstractApiTask#defaultTransport}.
+     */
+    public void setTransport(ApiTransport transport) {
+        mTransport = transport;
+    }
+
+    //*************************************************************************
+    //  Public Method
+    //*************************************************************************
+
+    public void submit(AbstractApiTask<?> task) {
+        List<AbstractApiTask<?>> batch = null;
+        synchronized (mPendingTasks) {
+            mPendingTasks.add(task);
+            if (mPendingTasks.size() >= mMaxBatchSize) {
+                batch = drainPendingTasks();
+            } else if (mPendingTasks.size() == 1) {
+                mHandler.postDelayed(mFlushRunnable, mWindow);
+            }
+        }
+        if (batch != null) send(batch);
+    }
+
+    public void flush() {
+        List<AbstractApiTask<?>> batch;
+        synchronized (mPendingTasks) {
+            batch = drainPendingTasks();
+        }
+        if (!batch.isEmpty()) send(batch);
+    }
+
+    public void runBatch(AbstractApiTask<?>... tasks) {
+        if (tasks.length == 0) return;
+        send(new ArrayList<>(Arrays.asList(tasks)));
+    }
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private List<AbstractApiTask<?>> drainPendingTasks() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        List<AbstractApiTask<?>> batch = new ArrayList<>(mPendingTasks);
+        mPendingTasks.clear();
+        return batch;
+    }
+
+    //*************************************************************************
+    //  Dispatch
+    //*************************************************************************
+
+    private void send(List<AbstractApiTask<?>> batch) {
+        // conditional request needs its own 304, batch response can't carry it
+        final List<AbstractApiTask<?>> tasks = new ArrayList<>();
+        for (AbstractApiTask<?> task : batch) {
+            if (task.getResponseCache() != null) {
+                LLog.d("Task %s has response cache, send it alone", task.getUrl());
+                TaskManager.runImmediately(task);
+            } else {
+                tasks.add(task);
+            }
+        }
+        if (tasks.isEmpty()) return;
+
+        final String envelope;
+        try {
+            List<BatchProtocol.Request> requests = new ArrayList<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                AbstractApiTask<?> task = tasks.get(i);
+                requests.add(new BatchProtocol.Request(Integer.toString(i),
+                        task.getUrl(), task.getArguments(), task.getBatchHeaders()));
+            }
+            envelope = BatchProtocol.encodeRequests(requests);
+        } catch (IOException e) {
+            // StringWriter never throws
+            throw new IllegalStateException(e);
+        }
+        LLog.d("Send %d tasks in batch", tasks.size());
+
+        final BatchApiTask batchTask = new BatchApiTask(mBatchUrl);
+        if (mTransport != null) batchTask.setTransport(mTransport);
+        batchTask.addArgument(BatchProtocol.ARG_REQUESTS, envelope);
+        batchTask.addFinishedListener(new TaskListener.TaskFinishedListener<Map<String, BatchProtocol.Part>>() {
+            @Override
+            public void onTaskFinished(Map<String, BatchProtocol.Part> parts) {
+                dispatch(tasks, parts);
+            }
+        });
+        batchTask.addFailedListener(new TaskListener.TaskFailedListener<Map<String, BatchProtocol.Part>>() {
+            @Override
+            public void onTaskFailed(Map<String, BatchProtocol.Part> parts, TaskException ex) {
+                fail(tasks, ex);
+            }
+        });
+        TaskManager.runImmediately(batchTask);
+    }
+
+    private void dispatch(List<AbstractApiTask<?>> tasks, Map<String, BatchProtocol.Part> parts) {
+        for (int i = 0; i < tasks.size(); i++) {
+            String id = Integer.toString(i);
+            BatchProtocol.Part part = parts.get(id);
+            if (part == null) {
+                part = new BatchProtocol.Part(id, 0, null, new ApiException(
+                        ApiException.BATCH_RESPONSE_MISSED,
+                        RuntimeContext.getString(R.string.msg_http_err_server_error)));
+            }
+            tasks.get(i).mBatchedResponse = part;
+            TaskManager.runImmediately(tasks.get(i));
+        }
+    }
+
+    private void fail(List<AbstractApiTask<?>> tasks, TaskException ex) {
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).mBatchedResponse = new BatchProtocol.Part(
+                    Integer.toString(i), 0, null, ex);
+            TaskManager.runImmediately(tasks.get(i));
+        }
+    }
+
+    //*************************************************************************
+    //  Batch Task
+    //*************************************************************************
+
+    static class BatchApiTask extends AbstractApiTask<Map<String, BatchProtocol.Part>> {
+
+        BatchApiTask(String url) {
+            super(url);
+        }
+
+        @Override
+        public void init() {
+            setStreamingDecode(true);
+        }
+
+        @Override
+        protected Map<String, BatchProtocol.Part> decodeResult(JsonReader reader) throws IOException {
+            return BatchProtocol.decodeResponses(reader);
+        }
+
+        @Override
+        protected Map<String, BatchProtocol.Part> generateResult() {
+            return getDecodedResult();
+        }
+    }
+
+}
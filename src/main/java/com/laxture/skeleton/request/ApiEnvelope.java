@@ -0,0 +1,68 @@
+package com.laxture.skeleton.request;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.laxture.skeleton.util.GsonUtil;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * Common response envelope, e.g.
+ * <pre>{@code
+ *     {"total":120,"data":[...]}
+ * }</pre>
+ * Decoded in one pass by streaming decode, total count goes to
+ * {@link AbstractApiTask#setTotal(Long)} and data is decoded into Result, so
+ * nothing needs {@link AbstractApiTask#getResultJson()}. Attach it by
+ * {@link AbstractApiTask#setEnvelope(ApiEnvelope)}.
+ *
+ * Subclass can override {@link #onMetadata(AbstractApiTask, String, JsonReader)}
+ * to pick up other fields of envelope.
+ */
+public class ApiEnvelope {
+
+    public static final ApiEnvelope DEFAULT = new ApiEnvelope("data", "total");
+
+    public final String dataField;
+    public final String totalField;
+
+    public ApiEnvelope(String dataField, String totalField) {
+        this.dataField = dataField;
+        this.totalField = totalField;
+    }
+
+    /**
+     * @return decoded data, or null if envelope doesn't contain data field.
+     */
+    public <T> T decode(AbstractApiTask<?> task, JsonReader reader, Type dataType) throws IOException {
+        T data = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(dataField)) {
+                data = GsonUtil.fromJson(reader, dataType);
+            } else if (name.equals(totalField)) {
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else {
+                    // nextLong() accepts quoted number too
+                    task.setTotal(reader.nextLong());
+                }
+            } else {
+                onMetadata(task, name, reader);
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    /**
+     * Called for fields other than data and total, implementation must consume
+     * the value. Default implementation skips it.
+     */
+    protected void onMetadata(AbstractApiTask<?> task, String name, JsonReader reader) throws IOException {
+        reader.skipValue();
+    }
+
+}
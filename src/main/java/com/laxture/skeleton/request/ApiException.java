@@ -8,6 +8,24 @@ public class ApiException extends TaskException {
 
     public static final int RESPONSE_DATA_FORMAT_ERROR = 7000001;
 
+    public static final int RESPONSE_CACHE_MISSED = 7000002;
+
+    public static final int BATCH_RESPONSE_MISSED = 7000003;
+
+    public static final int BATCH_RESPONSE_FAILED = 7000004;
+
+    public static final int CIRCUIT_OPEN = 7000005;
+
+    public static final int HTTP_STATUS_ERROR = 7000006;
+
+    // raised as plain TaskException so it can be retried
+    public static final int TRANSPORT_ERROR = 7000007;
+
+    public static final int DEADLINE_EXCEEDED = 7000008;
+
+    // leader of coalesced request finished without result
+    public static final int SHARED_REQUEST_FAILED = 7000009;
+
     public ApiException(int errorCode, String detailMessage,
                         Throwable throwable) {
         super(errorCode, detailMessage, throwable);
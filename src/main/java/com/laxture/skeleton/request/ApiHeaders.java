@@ -0,0 +1,81 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.util.LLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default headers of every {@link AbstractApiTask}, resolved lazily from
+ * registered {@link HeaderProvider}s and cached as an immutable map.
+ *
+ * Tasks resolve them on their worker thread when request is sent, so
+ * expensive values such as device id never block main thread.
+ * {@link #warmUp()} can still be called when Application starts to have them
+ * ready before the first request.
+ */
+public class ApiHeaders {
+
+    private static final List<HeaderProvider> sProviders = new ArrayList<>();
+    static {
+        sProviders.add(new DefaultHeaderProvider());
+    }
+
+    private static volatile Map<String, String> sHeaders;
+
+    private ApiHeaders() {}
+
+    /**
+     * Add provider of environment specific headers. Its headers override the
+     * ones of providers added before.
+     */
+    public static synchronized void addProvider(HeaderProvider provider) {
+        sProviders.add(provider);
+        sHeaders = null;
+    }
+
+    public static synchronized void removeProvider(HeaderProvider provider) {
+        sProviders.remove(provider);
+        sHeaders = null;
+    }
+
+    /**
+     * Drop cached headers, e.g. some provided value has changed.
+     */
+    public static synchronized void invalidate() {
+        sHeaders = null;
+    }
+
+    public static Map<String, String> getHeaders() {
+        Map<String, String> headers = sHeaders;
+        if (headers != null) return headers;
+        return resolve();
+    }
+
+    public static void warmUp() {
+        if (sHeaders != null) return;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                resolve();
+            }
+        }, "ApiHeaders").start();
+    }
+
+    private static synchronized Map<String, String> resolve() {
+        if (sHeaders != null) return sHeaders;
+
+        long start = System.currentTimeMillis();
+        Map<String, String> headers = new HashMap<>();
+        for (HeaderProvider provider : sProviders) {
+            provider.provideHeaders(headers);
+        }
+        sHeaders = Collections.unmodifiableMap(headers);
+        LLog.d("Resolve API headers in %d ms", System.currentTimeMillis() - start);
+        return sHeaders;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.laxture.skeleton.request;
+
+/**
+ * Timing of API task pipeline. Install a {@link MetricsListener}, e.g.
+ * {@link HistogramMetricsListener}, to receive duration of every phase of
+ * every request. Nothing is measured when there is no listener.
+ *
+ * Phases:
+ * <ul>
+ *     <li>Connect - from task start to response available, i.e. DNS, connect and time-to-first-byte</li>
+ *     <li>Download - read response body as text</li>
+ *     <li>Parse - parse JSON, or download and decode together in streaming mode</li>
+ *     <li>Generate - generateResult() of task</li>
+ *     <li>Convert - convertApiResultToData() of adapter</li>
+ *     <li>Backoff - waiting between retries</li>
+ *     <li>Total - whole task run, including retries</li>
+ * </ul>
+ */
+public class ApiMetrics {
+
+    public enum Phase {
+        Connect, Download, Parse, Generate, Convert, Backoff, Total
+    }
+
+    public interface MetricsListener {
+        /**
+         * Called on the thread where the phase ends, implementation should be
+         * thread-safe and cheap.
+         */
+        void onPhaseTimed(String urlTemplate, Phase phase, long durationNanos, long responseSize);
+
+        /**
+         * Called when a task with {@link Deadline} finishes within its budget,
+         * or blows it.
+         */
+        void onDeadline(String urlTemplate, boolean blown);
+    }
+
+    private static volatile MetricsListener sMetricsListener;
+
+    private ApiMetrics() {}
+
+    public static void setMetricsListener(MetricsListener listener) {
+        sMetricsListener = listener;
+    }
+
+    public static boolean isEnabled() {
+        return sMetricsListener != null;
+    }
+
+    public static void record(String url, Phase phase, long durationNanos, long responseSize) {
+        MetricsListener listener = sMetricsListener;
+        if (listener == null) return;
+        listener.onPhaseTimed(toUrlTemplate(url), phase, durationNanos, responseSize);
+    }
+
+    public static void recordDeadline(String url, boolean blown) {
+        MetricsListener listener = sMetricsListener;
+        if (listener == null) return;
+        listener.onDeadline(toUrlTemplate(url), blown);
+    }
+
+    /**
+     * Drop query and replace numeric path segment with <code>{id}</code>, so
+     * requests of the same endpoint are aggregated together.
+     * e.g. <code>http://host/user/123/posts?page=2</code> -> <code>http://host/user/{id}/posts</code>
+     */
+    public static String toUrlTemplate(String url) {
+        if (url == null) return "";
+        int end = url.indexOf('?');
+        if (end < 0) end = url.length();
+        int schemeEnd = url.indexOf("://");
+        int pathStart = schemeEnd >= 0 ? url.indexOf('/', schemeEnd + 3) : 0;
+        if (pathStart < 0 || pathStart > end) return url.substring(0, end);
+
+        StringBuilder sb = new StringBuilder(end);
+        sb.append(url, 0, pathStart);
+        int segmentStart = pathStart;
+        for (int i = pathStart + 1; i <= end; i++) {
+            if (i < end && url.charAt(i) != '/') continue;
+            // segment is url[segmentStart+1, i)
+            boolean numeric = i > segmentStart + 1;
+            for (int j = segmentStart + 1; j < i && numeric; j++) {
+                numeric = Character.isDigit(url.charAt(j));
+            }
+            sb.append('/');
+            if (numeric) sb.append("{id}");
+            else sb.append(url, segmentStart + 1, i);
+            segmentStart = i;
+        }
+        return sb.toString();
+    }
+
+    //*************************************************************************
+    //  Request Timing
+    //*************************************************************************
+
+    /**
+     * Accumulate phase durations of one task run.
+     */
+    static final class Timing {
+
+        private final long mStartNanos = System.nanoTime();
+        private final long[] mDurations = new long[Phase.values().length];
+        private long mMark = mStartNanos;
+        private boolean mMarked;
+
+        /**
+         * Attribute time since last mark to the phase.
+         */
+        void mark(Phase phase) {
+            long now = System.nanoTime();
+            mDurations[phase.ordinal()] += now - mMark;
+            mMark = now;
+            mMarked = true;
+        }
+
+        void report(String url, long responseSize) {
+            // rest of the run after response is decoded is generateResult()
+            if (mMarked) mark(Phase.Generate);
+            mDurations[Phase.Total.ordinal()] = System.nanoTime() - mStartNanos;
+            MetricsListener listener = sMetricsListener;
+            if (listener == null) return;
+            String urlTemplate = toUrlTemplate(url);
+            for (Phase phase : Phase.values()) {
+                if (mDurations[phase.ordinal()] > 0) {
+                    listener.onPhaseTimed(urlTemplate, phase, mDurations[phase.ordinal()], responseSize);
+                }
+            }
+        }
+    }
+
+}
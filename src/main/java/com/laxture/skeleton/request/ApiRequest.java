@@ -0,0 +1,32 @@
+package com.laxture.skeleton.request;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Request sent by {@link ApiTransport}.
+ */
+public class ApiRequest {
+
+    public static final String METHOD_GET = "GET";
+    public static final String METHOD_POST = "POST";
+
+    public final String url;
+    public final String method;
+    public final Map<String, String> headers;
+    // null for request without body
+    public final byte[] body;
+    public final int connectTimeout;
+    public final int readTimeout;
+
+    public ApiRequest(String url, String method, Map<String, String> headers, byte[] body,
+                      int connectTimeout, int readTimeout) {
+        this.url = url;
+        this.method = method;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.task.TaskException;
+import com.laxture.lib.task.TaskListener;
+import com.laxture.lib.task.TaskManager;
+import com.laxture.lib.util.LLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Share one HTTP call and one parse between identical in-flight tasks, i.e.
+ * tasks with same {@link AbstractApiTask#getRequestKey()}.
+ *
+ * The first task runs the request. The others don't occupy any thread while
+ * waiting, they are run by {@link TaskManager} when the first task is done, so
+ * their own listeners are called as usual, and they return its result or error
+ * instead of requesting again. If the first task is cancelled, e.g. by
+ * {@link TaskScheduler} or lifecycle, one of the others takes over the request.
+ * Tasks run by this class should be cancelled by {@link #cancel(AbstractApiTask)},
+ * network call is only cancelled when the last subscriber cancels.
+ */
+public class ApiRequestCoalescer {
+
+    private static ApiRequestCoalescer sInstance;
+
+    public static synchronized ApiRequestCoalescer getInstance() {
+        if (sInstance == null) sInstance = new ApiRequestCoalescer();
+        return sInstance;
+    }
+
+    private final HashMap<String, Call> mCalls = new HashMap<>();
+
+    public void run(AbstractApiTask<?> task) {
+        Call call;
+        synchronized (this) {
+            String key = task.getRequestKey();
+            call = mCalls.get(key);
+            if (call != null) {
+                // run when the leader publishes
+                LLog.d("Coalesce request %s", key);
+                call.subscribers.add(task);
+                task.mCoalescedCall = call;
+                return;
+            }
+            call = new Call(key, task);
+            mCalls.put(key, call);
+            call.subscribers.add(task);
+            task.mCoalescedCall = call;
+        }
+        listenLeader(call);
+        TaskManager.runImmediately(task);
+    }
+
+    public void cancel(AbstractApiTask<?> task) {
+        Call call = task.mCoalescedCall;
+        synchronized (this) {
+            if (call == null || !call.subscribers.remove(task)) {
+                task.cancel();
+                return;
+            }
+
+            if (call.subscribers.isEmpty()) {
+                // last subscriber, cancel the network call.
+                if (mCalls.get(call.key) == call) mCalls.remove(call.key);
+                call.mPublished = true;
+                call.leader.cancel();
+                if (task != call.leader) task.cancel();
+                return;
+
+            } else if (task != call.leader) {
+                task.cancel();
+                return;
+            }
+        }
+
+        // other subscribers are still waiting for the result, keep leader
+        // running but stop notifying its caller.
+        task.removeAllTaskListeners();
+        listenLeader(call);
+    }
+
+    public synchronized int getInFlightCount() {
+        return mCalls.size();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void listenLeader(final Call call) {
+        AbstractApiTask rawTask = call.leader;
+        rawTask.addCancelledListener(new TaskListener.TaskCancelledListener() {
+            @Override
+            public void onTaskCancelled(Object result) {
+                handOver(call);
+            }
+        });
+    }
+
+    /**
+     * Called by leader when its request is done, successfully or not. Waiting
+     * subscribers are run then.
+     */
+    void publish(Call call, Object result, TaskException error, Long total) {
+        List<AbstractApiTask<?>> waiting;
+        synchronized (this) {
+            if (call.mPublished) return;
+            call.mPublished = true;
+            call.mResult = result;
+            call.mError = error;
+            call.mTotal = total;
+            if (mCalls.get(call.key) == call) mCalls.remove(call.key);
+            waiting = new ArrayList<>(call.subscribers);
+            waiting.remove(call.leader);
+        }
+        for (AbstractApiTask<?> task : waiting) {
+            TaskManager.runImmediately(task);
+        }
+    }
+
+    // leader is cancelled without publishing, the next subscriber requests instead
+    private void handOver(Call call) {
+        List<AbstractApiTask<?>> waiting;
+        synchronized (this) {
+            if (call.mPublished) return;
+            call.mPublished = true;
+            if (mCalls.get(call.key) == call) mCalls.remove(call.key);
+            waiting = new ArrayList<>(call.subscribers);
+            waiting.remove(call.leader);
+        }
+        if (!waiting.isEmpty()) LLog.d("Leader of %s is cancelled, hand over the request", call.key);
+        for (AbstractApiTask<?> task : waiting) {
+            task.mCoalescedCall = null;
+            run(task);
+        }
+    }
+
+    //*************************************************************************
+    //  Shared Call
+    //*************************************************************************
+
+    class Call {
+        final String key;
+        final AbstractApiTask<?> leader;
+        final List<AbstractApiTask<?>> subscribers = new ArrayList<>();
+
+        // guarded by ApiRequestCoalescer.this
+        private boolean mPublished;
+        private Object mResult;
+        private TaskException mError;
+        private Long mTotal;
+
+        Call(String key, AbstractApiTask<?> leader) {
+            this.key = key;
+            this.leader = leader;
+        }
+
+        boolean isLeader(AbstractApiTask<?> task) {
+            return task == leader;
+        }
+
+        void publish(Object result, TaskException error, Long total) {
+            ApiRequestCoalescer.this.publish(this, result, error, total);
+        }
+
+        Object getResult() {
+            synchronized (ApiRequestCoalescer.this) {
+                return mResult;
+            }
+        }
+
+        TaskException getError() {
+            synchronized (ApiRequestCoalescer.this) {
+                return mError;
+            }
+        }
+
+        Long getTotal() {
+            synchronized (ApiRequestCoalescer.this) {
+                return mTotal;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.util.LLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Response received by {@link ApiTransport}. Must be closed after body is
+ * read, so the connection can be reused.
+ */
+public class ApiResponse implements Closeable {
+
+    // rest of body larger than this is not worth reading to keep connection
+    private static final int MAX_DRAIN_BYTES = 8 * 1024;
+
+    public final int code;
+    public final InputStream body;
+
+    // header names in lower case
+    private final Map<String, String> mHeaders = new HashMap<>();
+    private final Runnable mOnClose;
+    private final Runnable mOnDiscard;
+    private long mSentRealtime;
+    private boolean mClosed;
+
+    public ApiResponse(int code, Map<String, String> headers, InputStream body, Runnable onClose) {
+        this(code, headers, body, onClose, null);
+    }
+
+    /**
+     * @param onClose called once when response is closed, e.g. to release the
+     *                connection. Can be null.
+     * @param onDiscard called before onClose if rest of body is too large to
+     *                  drain, e.g. to disconnect instead of reusing the
+     *                  connection. Can be null.
+     */
+    public ApiResponse(int code, Map<String, String> headers, InputStream body,
+                       Runnable onClose, Runnable onDiscard) {
+        this.code = code;
+        this.body = body != null ? body : new ByteArrayInputStream(new byte[0]);
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getKey() == null) continue;
+            mHeaders.put(entry.getKey().toLowerCase(Locale.US), entry.getValue());
+        }
+        mOnClose = onClose;
+        mOnDiscard = onDiscard;
+    }
+
+    /**
+     * @param sentRealtime elapsed realtime when request was written to an
+     *                     established connection.
+     */
+    public void setSentRealtime(long sentRealtime) {
+        mSentRealtime = sentRealtime;
+    }
+
+    /**
+     * @return 0 if transport doesn't record it.
+     */
+    public long getSentRealtime() {
+        return mSentRealtime;
+    }
+
+    /**
+     * @param name case-insensitive.
+     */
+    public String getHeader(String name) {
+        return mHeaders.get(name.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Drain the rest of body and close it. Connection is only kept alive when
+     * its body is fully read, if more than {@link #MAX_DRAIN_BYTES} is left,
+     * e.g. task is cancelled in the middle of a large download, the response
+     * is discarded instead of being read to the end.
+     */
+    @Override
+    public synchronized void close() {
+        if (mClosed) return;
+        mClosed = true;
+        try {
+            boolean drained = false;
+            try {
+                drained = drain();
+            } catch (IOException e) {
+                LLog.d("Failed to drain response body, connection won't be reused");
+            }
+            // discard before closing, so closing doesn't read the rest
+            if (!drained && mOnDiscard != null) mOnDiscard.run();
+            try {
+                body.close();
+            } catch (IOException ignored) {}
+        } finally {
+            if (mOnClose != null) mOnClose.run();
+        }
+    }
+
+    private boolean drain() throws IOException {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        int count;
+        while ((count = body.read(buffer)) != -1) {
+            drained += count;
+            if (drained > MAX_DRAIN_BYTES) return false;
+        }
+        return true;
+    }
+
+}
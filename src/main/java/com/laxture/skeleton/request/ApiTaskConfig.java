@@ -0,0 +1,77 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.connectivity.http.HttpTaskConfig;
+import com.laxture.lib.util.LLog;
+import com.laxture.lib.util.UnHandledException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+
+/**
+ * {@link HttpTaskConfig} with options handled by {@link AbstractApiTask}.
+ */
+public class ApiTaskConfig extends HttpTaskConfig {
+
+    // send Accept-Encoding: gzip and decompress response body while reading
+    public boolean acceptGzip = true;
+
+    // compress request body by gzip, only applied by ApiTransport
+    public boolean gzipRequest = false;
+
+    public ApiTaskConfig() {}
+
+    /**
+     * Copy every field of source, headers map is copied instead of shared.
+     * Compression is opt-in for configs other than ApiTaskConfig.
+     */
+    public ApiTaskConfig(HttpTaskConfig source) {
+        if (!(source instanceof ApiTaskConfig)) acceptGzip = false;
+        copyFields(source, this);
+    }
+
+    /**
+     * Copy of config owned by one task. The copy keeps the class of config if
+     * it has a no-arg constructor, otherwise it is an ApiTaskConfig with the
+     * fields of {@link HttpTaskConfig} and ApiTaskConfig.
+     */
+    static HttpTaskConfig fork(HttpTaskConfig config) {
+        Class<? extends HttpTaskConfig> clazz = config.getClass();
+        if (clazz == HttpTaskConfig.class || clazz == ApiTaskConfig.class) {
+            return new ApiTaskConfig(config);
+        }
+
+        HttpTaskConfig copy;
+        try {
+            Constructor<? extends HttpTaskConfig> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            copy = constructor.newInstance();
+        } catch (Exception e) {
+            LLog.w("Cannot instantiate %s, fork it as ApiTaskConfig", e, clazz.getName());
+            return new ApiTaskConfig(config);
+        }
+        copyFields(config, copy);
+        return copy;
+    }
+
+    private static void copyFields(HttpTaskConfig from, HttpTaskConfig to) {
+        for (Class<?> clazz = from.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            if (!clazz.isInstance(to)) continue;
+            for (Field field : clazz.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)
+                        || field.isSynthetic()) continue;
+                try {
+                    field.setAccessible(true);
+                    field.set(to, field.get(from));
+                } catch (IllegalAccessException e) {
+                    throw new UnHandledException("Cannot copy config field " + field.getName(), e);
+                }
+            }
+        }
+        to.headers = from.headers != null
+                ? new HashMap<>(from.headers) : new HashMap<String, String>();
+    }
+
+}
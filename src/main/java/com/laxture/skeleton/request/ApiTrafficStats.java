@@ -0,0 +1,106 @@
+package com.laxture.skeleton.request;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte counters of API response bodies, to verify the saving of compression.
+ */
+public class ApiTrafficStats {
+
+    private static final AtomicLong sWireBytes = new AtomicLong();
+    private static final AtomicLong sDecodedBytes = new AtomicLong();
+    private static final AtomicLong sGzipResponseCount = new AtomicLong();
+
+    /**
+     * Bytes of response body received from network, compressed or not.
+     */
+    public static long getWireBytes() {
+        return sWireBytes.get();
+    }
+
+    /**
+     * Bytes of response body after decompression.
+     */
+    public static long getDecodedBytes() {
+        return sDecodedBytes.get();
+    }
+
+    public static long getGzipResponseCount() {
+        return sGzipResponseCount.get();
+    }
+
+    public static void reset() {
+        sWireBytes.set(0);
+        sDecodedBytes.set(0);
+        sGzipResponseCount.set(0);
+    }
+
+    static CountingInputStream countWire(InputStream inputStream) {
+        return new CountingInputStream(inputStream, sWireBytes);
+    }
+
+    static InputStream countDecoded(InputStream inputStream) {
+        return new CountingInputStream(inputStream, sDecodedBytes);
+    }
+
+    static void onGzipResponse() {
+        sGzipResponseCount.incrementAndGet();
+    }
+
+    static class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong mCounter;
+        private long mCount;
+
+        CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            mCounter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCounter.incrementAndGet();
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCounter.addAndGet(read);
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            if (skipped > 0) {
+                mCounter.addAndGet(skipped);
+                mCount += skipped;
+            }
+            return skipped;
+        }
+
+        /**
+         * Bytes read through this stream.
+         */
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+}
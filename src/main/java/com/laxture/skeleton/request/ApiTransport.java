@@ -0,0 +1,25 @@
+package com.laxture.skeleton.request;
+
+import java.io.IOException;
+
+/**
+ * HTTP transport of {@link AbstractApiTask}. By default task sends request
+ * through HttpTextTask, plug a transport by
+ * {@link AbstractApiTask#setTransport(ApiTransport)} or
+ * {@link AbstractApiTask#defaultTransport} to control connection handling,
+ * e.g. {@link PooledTransport}. Task and listener API stay the same.
+ *
+ * Implementation must be thread-safe, it is shared by tasks running in
+ * parallel.
+ */
+public interface ApiTransport {
+
+    /**
+     * @return response with status and headers available, caller reads its
+     * body and closes it.
+     * @throws IOException if request cannot be sent or response cannot be
+     * received.
+     */
+    ApiResponse execute(ApiRequest request) throws IOException;
+
+}
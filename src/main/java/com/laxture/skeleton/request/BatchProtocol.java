@@ -0,0 +1,271 @@
+package com.laxture.skeleton.request;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.laxture.lib.task.TaskException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wire format of batch endpoint. Request envelope is posted as argument
+ * {@link #ARG_REQUESTS}:
+ * <pre>{@code
+ *     {"requests":[{"id":"0","url":"http://host/api/foo","args":{"page":"1"},
+ *                   "headers":{"X-Foo":"bar"}}, ...]}
+ * }</pre>
+ * where headers are only sent for requests which have their own headers.
+ * and server responds with
+ * <pre>{@code
+ *     {"responses":[{"id":"0","status":200,"body":{...}}, ...]}
+ * }</pre>
+ * where body is the JSON that the request would get if it was sent alone.
+ */
+public final class BatchProtocol {
+
+    public static final String ARG_REQUESTS = "requests";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BatchProtocol() {}
+
+    public static class Request {
+        public final String id;
+        public final String url;
+        public final Map<String, String> args;
+        public final Map<String, String> headers;
+
+        public Request(String id, String url, Map<String, String> args) {
+            this(id, url, args, Collections.<String, String>emptyMap());
+        }
+
+        public Request(String id, String url, Map<String, String> args, Map<String, String> headers) {
+            this.id = id;
+            this.url = url;
+            this.args = args;
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * Response of one request in the batch. {@link #error} is set instead when
+     * the whole batch failed.
+     */
+    public static class Part {
+        public final String id;
+        public final int status;
+        // UTF-8 JSON, decoded by the task as if it were response body
+        public final byte[] body;
+        final TaskException error;
+
+        public Part(String id, int status, String body) {
+            this(id, status, body != null ? body.getBytes(UTF_8) : null, null);
+        }
+
+        Part(String id, int status, byte[] body, TaskException error) {
+            this.id = id;
+            this.status = status;
+            this.body = body;
+            this.error = error;
+        }
+    }
+
+    //*************************************************************************
+    //  Request Envelope
+    //*************************************************************************
+
+    public static String encodeRequests(List<Request> requests) throws IOException {
+        StringWriter writer = new StringWriter();
+        JsonWriter out = new JsonWriter(writer);
+        out.beginObject().name("requests").beginArray();
+        for (Request request : requests) {
+            out.beginObject();
+            out.name("id").value(request.id);
+            out.name("url").value(request.url);
+            out.name("args").beginObject();
+            for (Map.Entry<String, String> arg : request.args.entrySet()) {
+                out.name(arg.getKey()).value(arg.getValue());
+            }
+            out.endObject();
+            if (!request.headers.isEmpty()) {
+                out.name("headers").beginObject();
+                for (Map.Entry<String, String> header : request.headers.entrySet()) {
+                    out.name(header.getKey()).value(header.getValue());
+                }
+                out.endObject();
+            }
+            out.endObject();
+        }
+        out.endArray().endObject();
+        out.close();
+        return writer.toString();
+    }
+
+    public static List<Request> decodeRequests(JsonReader in) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!"requests".equals(in.nextName())) {
+                in.skipValue();
+                continue;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                String id = null;
+                String url = null;
+                Map<String, String> args = new LinkedHashMap<>();
+                Map<String, String> headers = new LinkedHashMap<>();
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "id":
+                            id = in.nextString();
+                            break;
+                        case "url":
+                            url = in.nextString();
+                            break;
+                        case "args":
+                            in.beginObject();
+                            while (in.hasNext()) args.put(in.nextName(), in.nextString());
+                            in.endObject();
+                            break;
+                        case "headers":
+                            in.beginObject();
+                            while (in.hasNext()) headers.put(in.nextName(), in.nextString());
+                            in.endObject();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                requests.add(new Request(id, url, args, headers));
+            }
+            in.endArray();
+        }
+        in.endObject();
+        return requests;
+    }
+
+    //*************************************************************************
+    //  Response Envelope
+    //*************************************************************************
+
+    public static String encodeResponses(List<Part> parts) throws IOException {
+        StringWriter writer = new StringWriter();
+        JsonWriter out = new JsonWriter(writer);
+        out.beginObject().name("responses").beginArray();
+        for (Part part : parts) {
+            out.beginObject();
+            out.name("id").value(part.id);
+            out.name("status").value(part.status);
+            if (part.body != null) out.name("body").jsonValue(new String(part.body, UTF_8));
+            out.endObject();
+        }
+        out.endArray().endObject();
+        out.close();
+        return writer.toString();
+    }
+
+    public static Map<String, Part> decodeResponses(JsonReader in) throws IOException {
+        Map<String, Part> parts = new LinkedHashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!"responses".equals(in.nextName())) {
+                in.skipValue();
+                continue;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                String id = null;
+                int status = 0;
+                byte[] body = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "id":
+                            id = in.nextString();
+                            break;
+                        case "status":
+                            status = in.nextInt();
+                            break;
+                        case "body":
+                            if (in.peek() == JsonToken.NULL) in.nextNull();
+                            else body = copyValue(in);
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                parts.put(id, new Part(id, status, body, null));
+            }
+            in.endArray();
+        }
+        in.endObject();
+        return parts;
+    }
+
+    // copy one value token by token as it is read, no tree is built
+    private static byte[] copyValue(JsonReader in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonWriter out = new JsonWriter(new OutputStreamWriter(bytes, UTF_8));
+        out.setSerializeNulls(true);
+        int depth = 0;
+        do {
+            switch (in.peek()) {
+                case BEGIN_ARRAY:
+                    in.beginArray();
+                    out.beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    in.endArray();
+                    out.endArray();
+                    depth--;
+                    break;
+                case BEGIN_OBJECT:
+                    in.beginObject();
+                    out.beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    in.endObject();
+                    out.endObject();
+                    depth--;
+                    break;
+                case NAME:
+                    out.name(in.nextName());
+                    break;
+                case STRING:
+                    out.value(in.nextString());
+                    break;
+                case NUMBER:
+                    // keep number literal as it is
+                    out.jsonValue(in.nextString());
+                    break;
+                case BOOLEAN:
+                    out.value(in.nextBoolean());
+                    break;
+                case NULL:
+                    in.nextNull();
+                    out.nullValue();
+                    break;
+                default:
+                    throw new IOException("Unexpected token in batch body: " + in.peek());
+            }
+        } while (depth > 0);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+}
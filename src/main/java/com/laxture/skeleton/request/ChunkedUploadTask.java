@@ -0,0 +1,281 @@
+package com.laxture.skeleton.request;
+
+import android.os.SystemClock;
+
+import com.google.gson.stream.JsonReader;
+import com.laxture.lib.RuntimeContext;
+import com.laxture.lib.task.AbstractTask;
+import com.laxture.lib.task.TaskException;
+import com.laxture.lib.util.LLog;
+import com.laxture.skeleton.R;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Upload a file in fixed-size chunks, only one chunk is in memory at a time.
+ *
+ * Every chunk is sent as request body with
+ * <code>Content-Range: bytes start-end/total</code> and
+ * <code>Upload-Id</code> header, and server acknowledges it by
+ * <code>{"offset":n}</code>, the next byte it expects. Before the first
+ * chunk, and after every failure, task asks server for acknowledged offset by
+ * an empty request with <code>Content-Range: bytes *&#47;total</code>, so the
+ * upload resumes from there, by this task or by a new task with same upload id.
+ * Failures are retried by {@link RetryPolicy}.
+ *
+ * Acknowledged bytes are reported by TaskProgressUpdatedListener, and current
+ * throughput by {@link #getThroughput()}. Result is response body of the last
+ * chunk, or of the offset query if server already has whole file. Offset
+ * beyond what has been sent fails the task without retry.
+ */
+public class ChunkedUploadTask extends AbstractTask<String> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_UPLOAD_ID = "Upload-Id";
+    private static final String CONTENT_TYPE_OCTET_STREAM = "application/octet-stream";
+
+    private static final int TIMEOUT = 30 * 1000;
+
+    private static ApiTransport sFallbackTransport;
+
+    private final String mUrl;
+    private final File mFile;
+    private final String mUploadId;
+    private final Map<String, String> mHeaders = new HashMap<>();
+
+    private int mChunkSize = DEFAULT_CHUNK_SIZE;
+    private RetryPolicy mRetryPolicy = RetryPolicy.exponential(3);
+    private ApiTransport mTransport;
+
+    private long mAcknowledged;
+    private long mStartTime;
+    private long mStartOffset;
+
+    /**
+     * @param uploadId identify the upload on server, task created later with
+     *                 same id resumes it.
+     */
+    public ChunkedUploadTask(String url, File file, String uploadId) {
+        mUrl = url;
+        mFile = file;
+        mUploadId = uploadId;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        mChunkSize = Math.max(1, chunkSize);
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.NONE;
+    }
+
+    /**
+     * Default is {@link AbstractApiTask#defaultTransport}, or a
+     * {@link PooledTransport} if it is not set.
+     */
+    public void setTransport(ApiTransport transport) {
+        mTransport = transport;
+    }
+
+    public void addHeader(String name, String value) {
+        mHeaders.put(name, value);
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public long getAcknowledged() {
+        return mAcknowledged;
+    }
+
+    /**
+     * @return bytes per second acknowledged by server in this run.
+     */
+    public long getThroughput() {
+        long elapsed = SystemClock.elapsedRealtime() - mStartTime;
+        return elapsed > 0 ? (mAcknowledged - mStartOffset) * 1000 / elapsed : 0;
+    }
+
+    //*************************************************************************
+    //  Upload
+    //*************************************************************************
+
+    @Override
+    protected String run() {
+        ApiTransport transport = mTransport != null ? mTransport : getFallbackTransport();
+        long total = mFile.length();
+        byte[] chunk = new byte[(int) Math.min(mChunkSize, Math.max(total, 1))];
+        mStartTime = SystemClock.elapsedRealtime();
+
+        RandomAccessFile file = null;
+        int retryCount = 0;
+        boolean resumed = false;
+        try {
+            file = new RandomAccessFile(mFile, "r");
+            while (!isCancelled()) {
+                try {
+                    if (!resumed) {
+                        Ack query = send(transport, "bytes */" + total, null, 0);
+                        checkOffset(query.offset, total);
+                        mAcknowledged = query.offset;
+                        if (retryCount == 0) mStartOffset = mAcknowledged;
+                        resumed = true;
+                        LLog.d("Upload %s from offset %d/%d", mUploadId, mAcknowledged, total);
+                        publishProgress((int) Math.min(total, Integer.MAX_VALUE),
+                                (int) Math.min(mAcknowledged, Integer.MAX_VALUE));
+                        // server already has whole file, e.g. last ack was lost
+                        if (mAcknowledged >= total) return onFinished(query);
+                    }
+
+                    int length = (int) Math.min(chunk.length, total - mAcknowledged);
+                    file.seek(mAcknowledged);
+                    file.readFully(chunk, 0, length);
+                    String range = "bytes " + mAcknowledged + "-" + (mAcknowledged + length - 1) + "/" + total;
+                    Ack ack = send(transport, range, chunk, length);
+                    if (ack.offset <= mAcknowledged) {
+                        throw new IOException("Chunk at " + mAcknowledged + " is not acknowledged");
+                    }
+                    // server can't acknowledge bytes it has not received
+                    checkOffset(ack.offset, mAcknowledged + length);
+                    mAcknowledged = ack.offset;
+                    publishProgress((int) Math.min(total, Integer.MAX_VALUE),
+                            (int) Math.min(mAcknowledged, Integer.MAX_VALUE));
+                    retryCount = 0;
+                    if (mAcknowledged >= total) return onFinished(ack);
+
+                } catch (IOException e) {
+                    TaskException error = new TaskException(ApiException.TRANSPORT_ERROR,
+                            RuntimeContext.getString(R.string.msg_http_err_server_error), e);
+                    if (!mRetryPolicy.shouldRetry(retryCount, true, error)) {
+                        setErrorDetails(error);
+                        return null;
+                    }
+                    long delay = mRetryPolicy.getDelay(retryCount);
+                    retryCount++;
+                    LLog.w("Upload %s failed at offset %d, retry in %d ms", e, mUploadId, mAcknowledged, delay);
+                    SystemClock.sleep(delay);
+                    // server might have stored part of the chunk
+                    resumed = false;
+                }
+            }
+            return null;
+
+        } catch (ApiException e) {
+            setErrorDetails(e);
+            return null;
+        } catch (IOException e) {
+            setErrorDetails(new TaskException(ApiException.TRANSPORT_ERROR,
+                    RuntimeContext.getString(R.string.msg_http_err_server_error), e));
+            return null;
+        } finally {
+            if (file != null) try {
+                file.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private String onFinished(Ack ack) {
+        LLog.d("Upload %s finished, %d bytes/s", mUploadId, getThroughput());
+        return ack.body;
+    }
+
+    private void checkOffset(long offset, long limit) throws ApiException {
+        if (offset > limit) {
+            LLog.w("Upload %s acknowledged offset %d beyond %d", mUploadId, offset, limit);
+            throw new ApiException(ApiException.RESPONSE_DATA_FORMAT_ERROR,
+                    RuntimeContext.getString(R.string.msg_http_err_server_error));
+        }
+    }
+
+    private Ack send(ApiTransport transport, String range, byte[] chunk, int length)
+            throws IOException, ApiException {
+        HashMap<String, String> headers = new HashMap<>(ApiHeaders.getHeaders());
+        headers.putAll(mHeaders);
+        headers.put(HEADER_UPLOAD_ID, mUploadId);
+        headers.put(HEADER_CONTENT_RANGE, range);
+        headers.put(HEADER_CONTENT_TYPE, CONTENT_TYPE_OCTET_STREAM);
+
+        byte[] body = new byte[0];
+        if (chunk != null) {
+            // transport takes whole array as body
+            body = length == chunk.length ? chunk : copyOf(chunk, length);
+        }
+        ApiResponse response = transport.execute(new ApiRequest(mUrl, ApiRequest.METHOD_POST,
+                headers, body, TIMEOUT, TIMEOUT));
+        try {
+            if (response.code >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                throw new IOException("Upload chunk failed with status " + response.code);
+            }
+            if (response.code < HttpURLConnection.HTTP_OK
+                    || response.code >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                throw new ApiException(ApiException.HTTP_STATUS_ERROR,
+                        RuntimeContext.getString(R.string.msg_http_err_server_error));
+            }
+            return readAck(response);
+        } finally {
+            response.close();
+        }
+    }
+
+    private static Ack readAck(ApiResponse response) throws IOException, ApiException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = response.body.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        String body = out.toString("UTF-8");
+
+        long offset = -1;
+        try {
+            JsonReader reader = new JsonReader(new StringReader(body));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("offset".equals(reader.nextName())) offset = reader.nextLong();
+                else reader.skipValue();
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new ApiException(ApiException.RESPONSE_DATA_FORMAT_ERROR,
+                    RuntimeContext.getString(R.string.msg_http_err_server_error), e);
+        }
+        if (offset < 0) {
+            throw new ApiException(ApiException.RESPONSE_DATA_FORMAT_ERROR,
+                    RuntimeContext.getString(R.string.msg_http_err_server_error));
+        }
+        return new Ack(offset, body);
+    }
+
+    private static byte[] copyOf(byte[] source, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(source, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static synchronized ApiTransport getFallbackTransport() {
+        if (AbstractApiTask.defaultTransport != null) return AbstractApiTask.defaultTransport;
+        if (sFallbackTransport == null) sFallbackTransport = new PooledTransport();
+        return sFallbackTransport;
+    }
+
+    private static class Ack {
+        final long offset;
+        final String body;
+
+        Ack(long offset, String body) {
+            this.offset = offset;
+            this.body = body;
+        }
+    }
+
+}
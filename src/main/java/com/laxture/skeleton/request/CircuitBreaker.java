@@ -0,0 +1,129 @@
+package com.laxture.skeleton.request;
+
+import android.os.SystemClock;
+
+import com.laxture.lib.util.LLog;
+
+import java.util.HashMap;
+
+/**
+ * Per host circuit breaker of API tasks. After {@link #failureThreshold}
+ * consecutive failures the circuit opens and tasks to the host fail fast.
+ * Once {@link #openDuration} passed, circuit becomes half-open and lets
+ * {@link #halfOpenProbes} tasks through; it closes if a probe succeeds or
+ * opens again if a probe fails. A probe which never reports, e.g. its task is
+ * cancelled, frees its slot by {@link #onAbandoned()}, or at the latest after
+ * another {@link #openDuration}.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        Closed, Open, HalfOpen
+    }
+
+    public interface StateListener {
+        void onStateChanged(String host, State from, State to);
+    }
+
+    public static int defaultFailureThreshold = 5;
+    public static long defaultOpenDuration = 30 * 1000;
+    public static int defaultHalfOpenProbes = 1;
+
+    private static final HashMap<String, CircuitBreaker> sBreakers = new HashMap<>();
+    private static StateListener sStateListener;
+
+    public static synchronized CircuitBreaker forHost(String host) {
+        CircuitBreaker breaker = sBreakers.get(host);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(host, defaultFailureThreshold,
+                    defaultOpenDuration, defaultHalfOpenProbes);
+            sBreakers.put(host, breaker);
+        }
+        return breaker;
+    }
+
+    public static void setStateListener(StateListener stateListener) {
+        sStateListener = stateListener;
+    }
+
+    public final String host;
+    public final int failureThreshold;
+    public final long openDuration;
+    public final int halfOpenProbes;
+
+    private State mState = State.Closed;
+    private int mFailureCount;
+    private int mProbeCount;
+    private long mOpenedAt;
+    private long mProbeStartedAt;
+
+    public CircuitBreaker(String host, int failureThreshold, long openDuration, int halfOpenProbes) {
+        this.host = host;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    public synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * @return false if request should fail fast.
+     */
+    public synchronized boolean allowRequest() {
+        switch (mState) {
+            case Open:
+                if (SystemClock.elapsedRealtime() - mOpenedAt < openDuration) return false;
+                transitTo(State.HalfOpen);
+                mProbeCount = 1;
+                mProbeStartedAt = SystemClock.elapsedRealtime();
+                return true;
+
+            case HalfOpen:
+                if (mProbeCount >= halfOpenProbes) {
+                    // probes are lost, start over
+                    if (SystemClock.elapsedRealtime() - mProbeStartedAt < openDuration) return false;
+                    LLog.w("Probes of %s are lost, probe again", host);
+                    mProbeCount = 0;
+                }
+                if (mProbeCount == 0) mProbeStartedAt = SystemClock.elapsedRealtime();
+                mProbeCount++;
+                return true;
+
+            default:
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        mFailureCount = 0;
+        if (mState != State.Closed) transitTo(State.Closed);
+    }
+
+    /**
+     * Request let through is dropped without result, e.g. cancelled, so it
+     * counts as neither success nor failure.
+     */
+    public synchronized void onAbandoned() {
+        if (mState == State.HalfOpen && mProbeCount > 0) mProbeCount--;
+    }
+
+    public synchronized void onFailure() {
+        mFailureCount++;
+        if (mState == State.HalfOpen
+                || (mState == State.Closed && mFailureCount >= failureThreshold)) {
+            mOpenedAt = SystemClock.elapsedRealtime();
+            transitTo(State.Open);
+        }
+    }
+
+    private void transitTo(State state) {
+        State from = mState;
+        mState = state;
+        LLog.i("Circuit of %s: %s -> %s", host, from, state);
+        StateListener listener = sStateListener;
+        if (listener != null) listener.onStateChanged(host, from, state);
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.laxture.skeleton.request;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.laxture.lib.util.LLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time budget shared by one or several API tasks, e.g. all requests a screen
+ * needs to render within 2 seconds.
+ *
+ * Attached tasks shrink their connect / read timeouts to the remaining budget
+ * before every attempt, and don't retry past it. When budget is blown, task
+ * either is cancelled, or resolves its Result from {@link CacheProvider},
+ * default is the {@link ResponseCache} of the task. Tasks still running at
+ * expiry are cancelled in {@link Fallback#Cancel} mode. In
+ * {@link Fallback#Cache} mode, response being read is closed instead, so the
+ * task resolves from cache and its finished listeners get the cached Result
+ * right away. Blown and met budgets are reported per endpoint by
+ * {@link ApiMetrics}.
+ */
+public class Deadline {
+
+    public enum Fallback {
+        Cancel, Cache
+    }
+
+    public interface CacheProvider {
+        /**
+         * @return cached Result of task, or null if there is none.
+         */
+        Object resolve(AbstractApiTask<?> task);
+    }
+
+    /**
+     * Decode cached response of {@link AbstractApiTask#getResponseCache()}.
+     */
+    public static final CacheProvider RESPONSE_CACHE = new CacheProvider() {
+        @Override
+        public Object resolve(AbstractApiTask<?> task) {
+            return task.resolveFromResponseCache();
+        }
+    };
+
+    private final long mExpireAt;
+    private final Fallback mFallback;
+    private CacheProvider mCacheProvider = RESPONSE_CACHE;
+
+    private final List<AbstractApiTask<?>> mTasks = new ArrayList<>();
+    private boolean mTimerScheduled;
+
+    public Deadline(long budgetMillis, Fallback fallback) {
+        mExpireAt = SystemClock.elapsedRealtime() + budgetMillis;
+        mFallback = fallback;
+    }
+
+    public Deadline setCacheProvider(CacheProvider cacheProvider) {
+        mCacheProvider = cacheProvider != null ? cacheProvider : RESPONSE_CACHE;
+        return this;
+    }
+
+    public CacheProvider getCacheProvider() {
+        return mCacheProvider;
+    }
+
+    public Fallback getFallback() {
+        return mFallback;
+    }
+
+    public long remaining() {
+        return mExpireAt - SystemClock.elapsedRealtime();
+    }
+
+    public boolean isExpired() {
+        return remaining() <= 0;
+    }
+
+    public void attach(AbstractApiTask<?>... tasks) {
+        for (AbstractApiTask<?> task : tasks) task.setDeadline(this);
+    }
+
+    synchronized void register(AbstractApiTask<?> task) {
+        mTasks.add(task);
+        if (mTimerScheduled) return;
+        mTimerScheduled = true;
+        new Handler(Looper.getMainLooper()).postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                onExpired();
+            }
+        }, Math.max(0, remaining()));
+    }
+
+    private void onExpired() {
+        final List<AbstractApiTask<?>> tasks;
+        synchronized (this) {
+            tasks = new ArrayList<>(mTasks);
+            mTasks.clear();
+        }
+        if (mFallback == Fallback.Cache) {
+            // closing response stream might touch network
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    abortRemaining(tasks);
+                }
+            }, "Deadline-Abort").start();
+            return;
+        }
+        for (AbstractApiTask<?> task : tasks) {
+            if (task.isCancelled() || task.getDeadline() != this || !task.settleDeadline(true)) continue;
+            LLog.d("Deadline expired, cancel %s", task.getUrl());
+            TaskScheduler.getDefault().cancel(task);
+        }
+    }
+
+    private void abortRemaining(List<AbstractApiTask<?>> tasks) {
+        for (AbstractApiTask<?> task : tasks) {
+            if (task.isCancelled() || task.getDeadline() != this) continue;
+            task.abortAttempt();
+        }
+    }
+
+}
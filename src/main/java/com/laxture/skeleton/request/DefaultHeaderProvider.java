@@ -0,0 +1,23 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.RuntimeContext;
+import com.laxture.lib.util.DeviceUtil;
+import com.laxture.skeleton.Constants;
+
+import java.util.Map;
+
+/**
+ * Platform, app version, device and OS headers.
+ */
+public class DefaultHeaderProvider implements HeaderProvider {
+
+    @Override
+    public void provideHeaders(Map<String, String> headers) {
+        headers.put("platform", Integer.toString(Constants.REQ_ARG_PLATFORM_ANDROID));
+        headers.put("appVersion", RuntimeContext.getVersionName());
+        headers.put("device", DeviceUtil.getDeviceId());
+        headers.put("os", android.os.Build.VERSION.RELEASE);
+        headers.put("osVersion", Integer.toString(android.os.Build.VERSION.SDK_INT));
+    }
+
+}
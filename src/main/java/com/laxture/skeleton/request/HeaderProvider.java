@@ -0,0 +1,13 @@
+package com.laxture.skeleton.request;
+
+import java.util.Map;
+
+/**
+ * Contribute default headers of API requests, see {@link ApiHeaders}.
+ * Called once per resolution, possibly on background thread.
+ */
+public interface HeaderProvider {
+
+    void provideHeaders(Map<String, String> headers);
+
+}
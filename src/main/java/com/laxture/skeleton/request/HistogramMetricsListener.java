@@ -0,0 +1,145 @@
+package com.laxture.skeleton.request;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregate phase durations into histograms per url template and phase.
+ * Buckets are power of 2 microseconds, which is precise enough to tell
+ * percentiles apart while costing a fixed amount of memory per endpoint.
+ */
+public class HistogramMetricsListener implements ApiMetrics.MetricsListener {
+
+    public static class Histogram {
+
+        private static final int BUCKET_COUNT = 32;
+
+        public final String urlTemplate;
+        public final ApiMetrics.Phase phase;
+
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+        private long mCount;
+        private long mSumMicros;
+        private long mMaxMicros;
+        private long mSumResponseSize;
+
+        Histogram(String urlTemplate, ApiMetrics.Phase phase) {
+            this.urlTemplate = urlTemplate;
+            this.phase = phase;
+        }
+
+        synchronized void add(long durationNanos, long responseSize) {
+            long micros = durationNanos / 1000;
+            int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+            mBuckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+            mCount++;
+            mSumMicros += micros;
+            mMaxMicros = Math.max(mMaxMicros, micros);
+            mSumResponseSize += responseSize;
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized long getMeanMillis() {
+            return mCount == 0 ? 0 : mSumMicros / mCount / 1000;
+        }
+
+        public synchronized long getMaxMillis() {
+            return mMaxMicros / 1000;
+        }
+
+        public synchronized long getMeanResponseSize() {
+            return mCount == 0 ? 0 : mSumResponseSize / mCount;
+        }
+
+        /**
+         * @param percentile 0~100
+         * @return upper bound of the bucket where the percentile falls in.
+         */
+        public synchronized long getPercentileMillis(double percentile) {
+            if (mCount == 0) return 0;
+            long threshold = (long) Math.ceil(mCount * percentile / 100);
+            long accumulated = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                accumulated += mBuckets[i];
+                if (accumulated >= threshold) {
+                    return Math.min(1L << i, mMaxMicros) / 1000;
+                }
+            }
+            return getMaxMillis();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s [%s] count=%d mean=%dms p50=%dms p90=%dms p99=%dms max=%dms size=%d",
+                    urlTemplate, phase, mCount, getMeanMillis(), getPercentileMillis(50),
+                    getPercentileMillis(90), getPercentileMillis(99), getMaxMillis(),
+                    getMeanResponseSize());
+        }
+    }
+
+    private final Map<String, Histogram> mHistograms = new HashMap<>();
+
+    // url template -> {met, blown}
+    private final Map<String, long[]> mDeadlineCounts = new HashMap<>();
+
+    @Override
+    public void onPhaseTimed(String urlTemplate, ApiMetrics.Phase phase,
+                             long durationNanos, long responseSize) {
+        getOrCreate(urlTemplate, phase).add(durationNanos, responseSize);
+    }
+
+    @Override
+    public synchronized void onDeadline(String urlTemplate, boolean blown) {
+        long[] counts = mDeadlineCounts.get(urlTemplate);
+        if (counts == null) {
+            counts = new long[2];
+            mDeadlineCounts.put(urlTemplate, counts);
+        }
+        counts[blown ? 1 : 0]++;
+    }
+
+    /**
+     * @return count of tasks of endpoint which finished within deadline.
+     */
+    public synchronized long getDeadlineMetCount(String urlTemplate) {
+        long[] counts = mDeadlineCounts.get(urlTemplate);
+        return counts != null ? counts[0] : 0;
+    }
+
+    /**
+     * @return count of tasks of endpoint which blew their deadline.
+     */
+    public synchronized long getDeadlineBlownCount(String urlTemplate) {
+        long[] counts = mDeadlineCounts.get(urlTemplate);
+        return counts != null ? counts[1] : 0;
+    }
+
+    public synchronized Histogram getHistogram(String urlTemplate, ApiMetrics.Phase phase) {
+        return mHistograms.get(urlTemplate + '#' + phase);
+    }
+
+    public synchronized List<Histogram> getHistograms() {
+        return new ArrayList<>(mHistograms.values());
+    }
+
+    public synchronized void clear() {
+        mHistograms.clear();
+        mDeadlineCounts.clear();
+    }
+
+    private synchronized Histogram getOrCreate(String urlTemplate, ApiMetrics.Phase phase) {
+        String key = urlTemplate + '#' + phase;
+        Histogram histogram = mHistograms.get(key);
+        if (histogram == null) {
+            histogram = new Histogram(urlTemplate, phase);
+            mHistograms.put(key, histogram);
+        }
+        return histogram;
+    }
+
+}
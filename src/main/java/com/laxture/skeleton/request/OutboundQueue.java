@@ -0,0 +1,573 @@
+package com.laxture.skeleton.request;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.laxture.lib.RuntimeContext;
+import com.laxture.lib.task.TaskException;
+import com.laxture.lib.task.TaskListener;
+import com.laxture.lib.util.LLog;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Durable queue of write-style requests, so they survive being offline and
+ * process death.
+ *
+ * Requests are persisted in an append-only journal, one JSON record per line,
+ * before they are sent, and marked done once server accepts or rejects them.
+ * Pending requests are replayed in order when connectivity returns, in batches
+ * by {@link ApiBatcher} if one is set. A request with the same dedup key as a
+ * pending one replaces it, e.g. repeated edits of an entity collapse into the
+ * last one. Journal is compacted once it holds more done records than pending
+ * ones.
+ *
+ * Every request carries <code>Idempotency-Key</code> header, which stays the
+ * same across replays, so server can tell a replay of request it has already
+ * applied, e.g. when connection dropped before its response arrived.
+ *
+ * A submitted task is sent as it is, directly or by a later replay, so its
+ * listeners are called once its request is accepted or rejected. If a later
+ * request with the same dedup key replaces it before it is sent, the task is
+ * cancelled. Requests restored from journal after process death are sent by
+ * internal tasks. Every completed request is reported to
+ * {@link ReplayListener}.
+ */
+public class OutboundQueue {
+
+    public static final int COMPACT_THRESHOLD = 64;
+
+    private static final String OP_ADD = "add";
+    private static final String OP_DONE = "done";
+
+    public static final String HEADER_IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private static OutboundQueue sDefault;
+
+    public static synchronized OutboundQueue getDefault() {
+        if (sDefault == null) {
+            sDefault = new OutboundQueue(new File(
+                    RuntimeContext.getApplication().getFilesDir(), "outbound_queue.journal"));
+        }
+        return sDefault;
+    }
+
+    public interface ReplayListener {
+        void onReplayed(String url, Map<String, String> args, TaskException ex);
+    }
+
+    static class Entry {
+        final long id;
+        final String url;
+        final Map<String, String> args;
+        final String dedupKey;
+        // id is only unique in this journal, it restarts once journal is empty
+        final String idempotencyKey;
+
+        // guarded by OutboundQueue.this
+        // task sending this request, submitted one or created for replay
+        AbstractApiTask<?> task;
+        // round sending this request right now, it can't be withdrawn then
+        ReplayRound round;
+
+        Entry(long id, String url, Map<String, String> args, String dedupKey, String idempotencyKey) {
+            this.id = id;
+            this.url = url;
+            this.args = args;
+            this.dedupKey = dedupKey;
+            this.idempotencyKey = idempotencyKey;
+        }
+    }
+
+    /**
+     * Entries sent in one go, either one by one in order, or in one batch.
+     * Replay is finished once all of them complete, or when one of them fails
+     * to reach server in order.
+     */
+    private class ReplayRound {
+        private final List<Entry> mEntries;
+        // null to send in batch
+        private final TaskScheduler.Priority mPriority;
+        private int mNext;
+        private int mRemaining;
+        private boolean mDrained = true;
+
+        ReplayRound(List<Entry> entries, TaskScheduler.Priority priority) {
+            mEntries = entries;
+            mPriority = priority;
+        }
+
+        void start() {
+            if (mPriority != null) {
+                sendNext();
+                return;
+            }
+
+            List<AbstractApiTask<?>> tasks = new ArrayList<>();
+            synchronized (OutboundQueue.this) {
+                for (Entry entry : mEntries) {
+                    if (mPending.containsKey(entry.id)) tasks.add(take(entry));
+                }
+                mRemaining = tasks.size();
+            }
+            if (tasks.isEmpty()) {
+                onReplayFinished(true);
+                return;
+            }
+            mBatcher.runBatch(tasks.toArray(new AbstractApiTask<?>[tasks.size()]));
+        }
+
+        private void sendNext() {
+            Entry next = null;
+            synchronized (OutboundQueue.this) {
+                while (next == null && mNext < mEntries.size()) {
+                    Entry entry = mEntries.get(mNext++);
+                    // collapsed after the round was started
+                    if (mPending.containsKey(entry.id)) next = entry;
+                }
+                if (next != null) take(next);
+            }
+            if (next == null) {
+                onReplayFinished(true);
+                return;
+            }
+            TaskScheduler.getDefault().run(next.task, mPriority);
+        }
+
+        // called with lock held
+        private AbstractApiTask<?> take(Entry entry) {
+            entry.round = this;
+            if (entry.task == null) entry.task = createReplayTask(entry);
+            return entry.task;
+        }
+
+        /**
+         * @param accepted false if request didn't reach server.
+         */
+        void onTaskCompleted(boolean accepted) {
+            if (mPriority != null) {
+                // rejected request is dropped, keep going
+                if (accepted) sendNext();
+                else onReplayFinished(false);
+                return;
+            }
+
+            boolean finished;
+            boolean drained;
+            synchronized (OutboundQueue.this) {
+                if (!accepted) mDrained = false;
+                finished = --mRemaining == 0;
+                drained = mDrained;
+            }
+            if (finished) onReplayFinished(drained);
+        }
+    }
+
+    private final File mJournalFile;
+    private Writer mJournal;
+    private boolean mLoaded;
+    private long mNextId = 1;
+    private int mDeadRecords;
+
+    // pending entries in submit order
+    private final LinkedHashMap<Long, Entry> mPending = new LinkedHashMap<>();
+
+    private ApiBatcher mBatcher;
+    private ReplayListener mReplayListener;
+    private boolean mReplaying;
+    private BroadcastReceiver mConnectivityReceiver;
+
+    public OutboundQueue(File journalFile) {
+        mJournalFile = journalFile;
+    }
+
+    public void setBatcher(ApiBatcher batcher) {
+        mBatcher = batcher;
+    }
+
+    public void setReplayListener(ReplayListener replayListener) {
+        mReplayListener = replayListener;
+    }
+
+    public synchronized int getPendingCount() {
+        load();
+        return mPending.size();
+    }
+
+    //*************************************************************************
+    //  Public Method
+    //*************************************************************************
+
+    /**
+     * Persist the request of task, then send it.
+     *
+     * @param dedupKey pending request with same key is replaced by this one,
+     *                 null to always keep both.
+     */
+    public void submit(AbstractApiTask<?> task, String dedupKey) {
+        List<Entry> collapsed;
+        synchronized (this) {
+            load();
+            Entry entry = new Entry(mNextId++, task.getUrl(),
+                    new TreeMap<>(task.getArguments()), dedupKey, UUID.randomUUID().toString());
+            collapsed = removeDuplicate(entry);
+            try {
+                append(OP_ADD, entry);
+            } catch (IOException e) {
+                LLog.e("Failed to persist outbound request %s", e, entry.url);
+            }
+            prepareTask(task, entry);
+            entry.task = task;
+            mPending.put(entry.id, entry);
+        }
+
+        cancelCollapsed(collapsed);
+        // sent right away if nothing else is pending, otherwise it waits for
+        // its turn in replay
+        replay(TaskScheduler.Priority.UserVisible);
+    }
+
+    /**
+     * Replay pending requests in order, no-op if replay is already running.
+     */
+    public void replay() {
+        replay(TaskScheduler.Priority.Background);
+    }
+
+    private void replay(TaskScheduler.Priority priority) {
+        List<Entry> entries;
+        synchronized (this) {
+            load();
+            if (mReplaying || mPending.isEmpty()) return;
+            mReplaying = true;
+            entries = new ArrayList<>(mPending.values());
+        }
+        LLog.d("Replay %d outbound requests", entries.size());
+        new ReplayRound(entries, mBatcher != null && entries.size() > 1 ? null : priority).start();
+    }
+
+    /**
+     * Replay pending requests whenever device gets connected.
+     */
+    public void startMonitoring(Context context) {
+        if (mConnectivityReceiver != null) return;
+        mConnectivityReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                ConnectivityManager cm = (ConnectivityManager)
+                        context.getSystemService(Context.CONNECTIVITY_SERVICE);
+                NetworkInfo info = cm != null ? cm.getActiveNetworkInfo() : null;
+                if (info != null && info.isConnected()) replay();
+            }
+        };
+        context.getApplicationContext().registerReceiver(mConnectivityReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    public void stopMonitoring(Context context) {
+        if (mConnectivityReceiver == null) return;
+        context.getApplicationContext().unregisterReceiver(mConnectivityReceiver);
+        mConnectivityReceiver = null;
+    }
+
+    //*************************************************************************
+    //  Replay
+    //*************************************************************************
+
+    private ReplayApiTask createReplayTask(Entry entry) {
+        ReplayApiTask task = new ReplayApiTask(entry.url);
+        for (Map.Entry<String, String> arg : entry.args.entrySet()) {
+            task.addArgument(arg.getKey(), arg.getValue());
+        }
+        prepareTask(task, entry);
+        return task;
+    }
+
+    /**
+     * Called once per task, it may be sent again by later replays.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void prepareTask(AbstractApiTask<?> task, final Entry entry) {
+        // write request is not safe to retry blindly, queue takes care of it
+        task.setIdempotent(false);
+        task.setHeader(HEADER_IDEMPOTENCY_KEY, entry.idempotencyKey);
+
+        AbstractApiTask rawTask = task;
+        rawTask.addFinishedListener(new TaskListener.TaskFinishedListener() {
+            @Override
+            public void onTaskFinished(Object result) {
+                onTaskCompleted(entry, true, null);
+            }
+        });
+        rawTask.addFailedListener(new TaskListener.TaskFailedListener() {
+            @Override
+            public void onTaskFailed(Object result, TaskException ex) {
+                if (ex instanceof ApiException) {
+                    // server rejected it, replay won't help
+                    LLog.w("Outbound request %s is rejected, drop it", ex, entry.url);
+                    onTaskCompleted(entry, true, ex);
+                } else {
+                    // still offline, keep it for next replay
+                    onTaskCompleted(entry, false, null);
+                }
+            }
+        });
+        rawTask.addCancelledListener(new TaskListener.TaskCancelledListener() {
+            @Override
+            public void onTaskCancelled(Object result) {
+                onTaskCompleted(entry, false, null);
+            }
+        });
+    }
+
+    /**
+     * @param accepted false if request didn't reach server, it stays pending.
+     */
+    private void onTaskCompleted(Entry entry, boolean accepted, TaskException ex) {
+        ReplayRound round;
+        synchronized (this) {
+            round = entry.round;
+            entry.round = null;
+        }
+        if (accepted) complete(entry, ex);
+        if (round != null) round.onTaskCompleted(accepted);
+    }
+
+    private void complete(Entry entry, TaskException ex) {
+        synchronized (this) {
+            if (mPending.remove(entry.id) == null) return;
+            try {
+                append(OP_DONE, entry);
+            } catch (IOException e) {
+                LLog.e("Failed to update outbound journal", e);
+            }
+            mDeadRecords += 2;
+            if (mDeadRecords > COMPACT_THRESHOLD && mDeadRecords > mPending.size()) compact();
+        }
+        if (mReplayListener != null) mReplayListener.onReplayed(entry.url, entry.args, ex);
+    }
+
+    private void onReplayFinished(boolean drained) {
+        boolean more;
+        synchronized (this) {
+            mReplaying = false;
+            more = drained && !mPending.isEmpty();
+        }
+        // requests submitted during replay
+        if (more) replay();
+    }
+
+    /**
+     * @return pending entries replaced by entry.
+     */
+    private List<Entry> removeDuplicate(Entry entry) {
+        List<Entry> collapsed = new ArrayList<>();
+        if (entry.dedupKey == null) return collapsed;
+        Iterator<Entry> iterator = mPending.values().iterator();
+        while (iterator.hasNext()) {
+            Entry pending = iterator.next();
+            // entry being sent right now cannot be withdrawn
+            if (entry.dedupKey.equals(pending.dedupKey) && pending.round == null) {
+                iterator.remove();
+                collapsed.add(pending);
+                mDeadRecords++;
+                LLog.d("Outbound request %s collapsed by key %s", pending.url, entry.dedupKey);
+            }
+        }
+        return collapsed;
+    }
+
+    private void cancelCollapsed(List<Entry> collapsed) {
+        for (Entry entry : collapsed) {
+            AbstractApiTask<?> task;
+            synchronized (this) {
+                task = entry.task;
+            }
+            if (task != null) task.cancel();
+        }
+    }
+
+    //*************************************************************************
+    //  Journal
+    //*************************************************************************
+
+    private void load() {
+        if (mLoaded) return;
+        mLoaded = true;
+        if (!mJournalFile.exists()) return;
+
+        int records = 0;
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(mJournalFile), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0) continue;
+                    records++;
+                    try {
+                        readRecord(line);
+                    } catch (IOException | RuntimeException e) {
+                        // torn write of last record
+                        LLog.w("Skip broken outbound journal record", e);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            LLog.e("Failed to load outbound journal", e);
+        }
+        mDeadRecords = records - mPending.size();
+        LLog.d("Loaded %d pending outbound requests", mPending.size());
+    }
+
+    private void readRecord(String line) throws IOException {
+        JsonReader in = new JsonReader(new StringReader(line));
+        String op = null;
+        long id = 0;
+        String url = null;
+        String key = null;
+        String idempotencyKey = null;
+        Map<String, String> args = new TreeMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "op":
+                    op = in.nextString();
+                    break;
+                case "id":
+                    id = in.nextLong();
+                    break;
+                case "url":
+                    url = in.nextString();
+                    break;
+                case "key":
+                    key = in.nextString();
+                    break;
+                case "idempotencyKey":
+                    idempotencyKey = in.nextString();
+                    break;
+                case "args":
+                    in.beginObject();
+                    while (in.hasNext()) args.put(in.nextName(), in.nextString());
+                    in.endObject();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        mNextId = Math.max(mNextId, id + 1);
+        if (OP_ADD.equals(op)) {
+            // record written before idempotency key was added
+            if (idempotencyKey == null) idempotencyKey = UUID.randomUUID().toString();
+            Entry entry = new Entry(id, url, args, key, idempotencyKey);
+            removeDuplicate(entry);
+            mPending.put(id, entry);
+        } else if (OP_DONE.equals(op)) {
+            mPending.remove(id);
+        }
+    }
+
+    private void append(String op, Entry entry) throws IOException {
+        if (mJournal == null) {
+            mJournalFile.getParentFile().mkdirs();
+            mJournal = new OutputStreamWriter(new FileOutputStream(mJournalFile, true), "UTF-8");
+        }
+        mJournal.write(encodeRecord(op, entry));
+        mJournal.write('\n');
+        mJournal.flush();
+    }
+
+    private static String encodeRecord(String op, Entry entry) throws IOException {
+        StringWriter writer = new StringWriter();
+        JsonWriter out = new JsonWriter(writer);
+        out.beginObject();
+        out.name("op").value(op);
+        out.name("id").value(entry.id);
+        if (OP_ADD.equals(op)) {
+            out.name("url").value(entry.url);
+            if (entry.dedupKey != null) out.name("key").value(entry.dedupKey);
+            out.name("idempotencyKey").value(entry.idempotencyKey);
+            out.name("args").beginObject();
+            for (Map.Entry<String, String> arg : entry.args.entrySet()) {
+                out.name(arg.getKey()).value(arg.getValue());
+            }
+            out.endObject();
+        }
+        out.endObject();
+        out.close();
+        return writer.toString();
+    }
+
+    /**
+     * Rewrite journal with pending entries only.
+     */
+    private void compact() {
+        File temp = new File(mJournalFile.getPath() + ".tmp");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            try {
+                for (Entry entry : mPending.values()) {
+                    writer.write(encodeRecord(OP_ADD, entry));
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+            if (mJournal != null) mJournal.close();
+            mJournal = null;
+            if (!temp.renameTo(mJournalFile)) throw new IOException("Failed to replace journal");
+            mDeadRecords = 0;
+            LLog.d("Compacted outbound journal, %d pending", mPending.size());
+        } catch (IOException e) {
+            LLog.w("Failed to compact outbound journal", e);
+            temp.delete();
+        }
+    }
+
+    //*************************************************************************
+    //  Replay Task
+    //*************************************************************************
+
+    static class ReplayApiTask extends AbstractApiTask<JsonObject> {
+
+        ReplayApiTask(String url) {
+            super(url);
+        }
+
+        @Override
+        public void init() {}
+
+        @Override
+        protected JsonObject generateResult() {
+            return getResultJson();
+        }
+    }
+
+}
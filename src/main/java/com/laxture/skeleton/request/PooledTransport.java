@@ -0,0 +1,133 @@
+package com.laxture.skeleton.request;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link ApiTransport} on HttpURLConnection with keep-alive connections.
+ *
+ * Idle connections are kept in the process wide pool of HttpURLConnection and
+ * reused by following requests to the same host, so bursts of requests skip
+ * TCP / TLS setup. Concurrent connections to one host are bounded by max
+ * connections per host, extra requests wait for a free connection instead of
+ * opening new ones. A connection returns to the pool only when its response
+ * is closed, see {@link ApiResponse#close()}.
+ *
+ * Size of idle pool is not set by this class. It is the process wide system
+ * property <code>http.maxConnections</code>, 5 by default, which is read once
+ * when HttpURLConnection opens its first connection, so set it at application
+ * start if it needs to be changed.
+ *
+ * HTTP/2 is not supported by HttpURLConnection, plug in an OkHttp based
+ * transport through {@link ApiTransport} if multiplexing is required.
+ */
+public class PooledTransport implements ApiTransport {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+
+    private final int mMaxConnectionsPerHost;
+    private final ConcurrentHashMap<String, Semaphore> mHostPermits = new ConcurrentHashMap<>();
+
+    public PooledTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
+
+    public PooledTransport(int maxConnectionsPerHost) {
+        mMaxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return mMaxConnectionsPerHost;
+    }
+
+    @Override
+    public ApiResponse execute(ApiRequest request) throws IOException {
+        URL url = new URL(request.url);
+        final Semaphore permits = getPermits(url);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for connection to " + url.getHost());
+        }
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(request.connectTimeout);
+            connection.setReadTimeout(request.readTimeout);
+            connection.setRequestMethod(request.method);
+            connection.setUseCaches(false);
+            for (Map.Entry<String, String> header : request.headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            if (request.body != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(request.body.length);
+            }
+            // DNS, TCP and TLS are done here, so they are not in sent time
+            connection.connect();
+            if (request.body != null) {
+                OutputStream out = connection.getOutputStream();
+                try {
+                    out.write(request.body);
+                } finally {
+                    out.close();
+                }
+            }
+            long sentRealtime = SystemClock.elapsedRealtime();
+
+            int code = connection.getResponseCode();
+            InputStream body = code >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getErrorStream() : connection.getInputStream();
+            Map<String, String> headers = new HashMap<>();
+            for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+                List<String> values = header.getValue();
+                if (header.getKey() != null && values != null && !values.isEmpty()) {
+                    headers.put(header.getKey(), values.get(0));
+                }
+            }
+
+            final HttpURLConnection responseConnection = connection;
+            ApiResponse response = new ApiResponse(code, headers, body, new Runnable() {
+                @Override
+                public void run() {
+                    permits.release();
+                }
+            }, new Runnable() {
+                @Override
+                public void run() {
+                    responseConnection.disconnect();
+                }
+            });
+            response.setSentRealtime(sentRealtime);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Semaphore getPermits(URL url) {
+        String host = url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+        Semaphore permits = mHostPermits.get(host);
+        if (permits == null) {
+            Semaphore newPermits = new Semaphore(mMaxConnectionsPerHost, true);
+            permits = mHostPermits.putIfAbsent(host, newPermits);
+            if (permits == null) permits = newPermits;
+        }
+        return permits;
+    }
+
+}
@@ -0,0 +1,402 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.RuntimeContext;
+import com.laxture.lib.util.LLog;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk cache of API responses validated by ETag / Last-Modified. Attach it
+ * to a task by {@link AbstractApiTask#setResponseCache(ResponseCache)}, task
+ * then sends If-None-Match / If-Modified-Since, and a 304 response is served
+ * from cached body through the normal processResponse() and generateResult()
+ * path.
+ *
+ * Entries are evicted in LRU order once total body size exceeds max size.
+ */
+public class ResponseCache {
+
+    private static final String SUFFIX_BODY = ".body";
+    private static final String SUFFIX_META = ".meta";
+    private static final String SUFFIX_TEMP = ".tmp";
+
+    public static final long DEFAULT_MAX_SIZE = 10 * 1024 * 1024;
+
+    private static ResponseCache sDefault;
+
+    public static synchronized ResponseCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new ResponseCache(new File(
+                    RuntimeContext.getApplication().getCacheDir(), "api_response"), DEFAULT_MAX_SIZE);
+        }
+        return sDefault;
+    }
+
+    public static class Entry {
+        public final String key;
+        public final String etag;
+        public final String lastModified;
+        final String fileName;
+        long size;
+
+        Entry(String key, String etag, String lastModified, String fileName, long size) {
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fileName = fileName;
+            this.size = size;
+        }
+    }
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private long mSize;
+    private boolean mIndexLoaded;
+
+    // access ordered, eldest entry is least recently used.
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mNotModifiedCount = new AtomicLong();
+    private final AtomicLong mBytesSaved = new AtomicLong();
+
+    public ResponseCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    //*************************************************************************
+    //  Statistics
+    //*************************************************************************
+
+    /**
+     * Count of responses requested with validators, either 304 or full
+     * response replacing a stale entry.
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * Count of responses requested without validators.
+     */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Count of 304 responses served from cache.
+     */
+    public long getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    /**
+     * Total body bytes served from cache instead of downloaded.
+     */
+    public long getBytesSaved() {
+        return mBytesSaved.get();
+    }
+
+    public synchronized long getSize() {
+        loadIndex();
+        return mSize;
+    }
+
+    //*************************************************************************
+    //  Cache Operation
+    //*************************************************************************
+
+    public synchronized Entry get(String key) {
+        loadIndex();
+        return mEntries.get(key);
+    }
+
+    public synchronized void remove(String key) {
+        loadIndex();
+        Entry entry = mEntries.remove(key);
+        if (entry != null) deleteEntryFiles(entry);
+    }
+
+    public synchronized void clear() {
+        loadIndex();
+        for (Entry entry : mEntries.values()) deleteEntryFiles(entry);
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Open cached body for a 304 response.
+     *
+     * @return null if the entry has been evicted.
+     */
+    InputStream openNotModified(String key) {
+        Entry entry = get(key);
+        if (entry == null) return null;
+        File body = new File(mDirectory, entry.fileName + SUFFIX_BODY);
+        try {
+            InputStream inputStream = new FileInputStream(body);
+            body.setLastModified(System.currentTimeMillis());
+            mHitCount.incrementAndGet();
+            mNotModifiedCount.incrementAndGet();
+            mBytesSaved.addAndGet(entry.size);
+            return inputStream;
+        } catch (IOException e) {
+            LLog.w("Failed to open cached response of %s", e, key);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Open cached body regardless of validation, e.g. as fallback when server
+     * cannot be reached in time.
+     *
+     * @return null if there is no entry.
+     */
+    InputStream openCached(String key) {
+        Entry entry = get(key);
+        if (entry == null) return null;
+        try {
+            return new FileInputStream(new File(mDirectory, entry.fileName + SUFFIX_BODY));
+        } catch (IOException e) {
+            LLog.w("Failed to open cached response of %s", e, key);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Wrap a full response so its body is written to cache while being read.
+     * The entry only takes effect after {@link CachingInputStream#commit()}.
+     *
+     * @return the original stream if response doesn't have any validator.
+     */
+    InputStream openWriteThrough(String key, String etag, String lastModified,
+                                 boolean requestedWithValidators, InputStream inputStream) {
+        (requestedWithValidators ? mHitCount : mMissCount).incrementAndGet();
+        if (etag == null && lastModified == null) {
+            remove(key);
+            return inputStream;
+        }
+
+        String fileName = hash(key);
+        try {
+            mDirectory.mkdirs();
+            File temp = new File(mDirectory, fileName + "." + System.nanoTime() + SUFFIX_TEMP);
+            return new CachingInputStream(inputStream, temp,
+                    new Entry(key, etag, lastModified, fileName, 0));
+        } catch (IOException e) {
+            LLog.w("Failed to open response cache of %s", e, key);
+            return inputStream;
+        }
+    }
+
+    private synchronized void commit(Entry entry, File temp) throws IOException {
+        loadIndex();
+        File body = new File(mDirectory, entry.fileName + SUFFIX_BODY);
+        File meta = new File(mDirectory, entry.fileName + SUFFIX_META);
+
+        Entry previous = mEntries.remove(entry.key);
+        if (previous != null) mSize -= previous.size;
+
+        if (!temp.renameTo(body)) {
+            temp.delete();
+            meta.delete();
+            throw new IOException("Failed to commit response cache " + body);
+        }
+        Writer writer = new FileWriter(meta);
+        try {
+            // key might contain line breaks from arguments
+            writer.write(URLEncoder.encode(entry.key, "UTF-8") + "\n"
+                    + (entry.etag != null ? entry.etag : "") + "\n"
+                    + (entry.lastModified != null ? entry.lastModified : "") + "\n");
+        } finally {
+            writer.close();
+        }
+
+        mEntries.put(entry.key, entry);
+        mSize += entry.size;
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            mSize -= eldest.size;
+            deleteEntryFiles(eldest);
+        }
+    }
+
+    private void deleteEntryFiles(Entry entry) {
+        new File(mDirectory, entry.fileName + SUFFIX_BODY).delete();
+        new File(mDirectory, entry.fileName + SUFFIX_META).delete();
+    }
+
+    //*************************************************************************
+    //  Index
+    //*************************************************************************
+
+    private void loadIndex() {
+        if (mIndexLoaded) return;
+        mIndexLoaded = true;
+
+        File[] bodies = mDirectory.listFiles();
+        if (bodies == null) return;
+        List<File> bodyFiles = new ArrayList<>();
+        for (File file : bodies) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX_BODY)) bodyFiles.add(file);
+            // leftover of interrupted download
+            else if (name.endsWith(SUFFIX_TEMP)) file.delete();
+        }
+
+        // restore LRU order by last access time
+        File[] sorted = bodyFiles.toArray(new File[bodyFiles.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long diff = lhs.lastModified() - rhs.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        for (File body : sorted) {
+            String fileName = body.getName().substring(0,
+                    body.getName().length() - SUFFIX_BODY.length());
+            File meta = new File(mDirectory, fileName + SUFFIX_META);
+            try {
+                BufferedReader reader = new BufferedReader(new FileReader(meta));
+                try {
+                    String key = reader.readLine();
+                    String etag = reader.readLine();
+                    String lastModified = reader.readLine();
+                    if (key == null) throw new IOException("Corrupted meta file " + meta);
+                    key = URLDecoder.decode(key, "UTF-8");
+                    Entry entry = new Entry(key,
+                            etag == null || etag.length() == 0 ? null : etag,
+                            lastModified == null || lastModified.length() == 0 ? null : lastModified,
+                            fileName, body.length());
+                    mEntries.put(key, entry);
+                    mSize += entry.size;
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                LLog.w("Drop broken response cache %s", e, fileName);
+                body.delete();
+                meta.delete();
+            }
+        }
+        trimToSize();
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+                  .append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    //*************************************************************************
+    //  Write-through Stream
+    //*************************************************************************
+
+    class CachingInputStream extends FilterInputStream {
+
+        private final File mTempFile;
+        private final OutputStream mCacheOutput;
+        private final Entry mEntry;
+        private boolean mClosed;
+
+        CachingInputStream(InputStream in, File tempFile, Entry entry) throws IOException {
+            super(in);
+            mTempFile = tempFile;
+            mCacheOutput = new FileOutputStream(tempFile);
+            mEntry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCacheOutput.write(b);
+                mEntry.size++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCacheOutput.write(buffer, offset, read);
+                mEntry.size += read;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Read remaining body and put it into cache.
+         */
+        void commit() throws IOException {
+            if (mClosed) return;
+            byte[] buffer = new byte[4096];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // drain the rest of response body
+            }
+            mClosed = true;
+            mCacheOutput.close();
+            ResponseCache.this.commit(mEntry, mTempFile);
+        }
+
+        /**
+         * Drop written body, e.g. response cannot be decoded.
+         */
+        void abort() {
+            if (mClosed) return;
+            mClosed = true;
+            try {
+                mCacheOutput.close();
+            } catch (IOException ignored) {}
+            mTempFile.delete();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.task.TaskException;
+
+import java.util.Random;
+
+/**
+ * Retry failed API task with exponential backoff and jitter. Delay of n-th
+ * retry is picked randomly from
+ * <code>[(1 - jitter) * d, d]</code> where <code>d = min(baseDelay * 2^n, maxDelay)</code>.
+ *
+ * Only idempotent tasks are retried unless {@link #retryNonIdempotent} is set,
+ * and {@link ApiException}s, which are raised by broken response rather than
+ * broken connection, are never retried.
+ *
+ * Policy is immutable so it can be shared by tasks, e.g. {@link #NONE}. Derive
+ * a copy by {@link #retryingNonIdempotent()} or {@link #withRetryListener}.
+ */
+public class RetryPolicy {
+
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0, 0);
+
+    public interface RetryListener {
+        void onRetry(AbstractApiTask<?> task, int retryCount, long delay, TaskException ex);
+    }
+
+    public final int maxRetries;
+    public final long baseDelay;
+    public final long maxDelay;
+    public final float jitter;
+    public final boolean retryNonIdempotent;
+
+    private final RetryListener mRetryListener;
+    private final Random mRandom = new Random();
+
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay, float jitter) {
+        this(maxRetries, baseDelay, maxDelay, jitter, false, null);
+    }
+
+    private RetryPolicy(int maxRetries, long baseDelay, long maxDelay, float jitter,
+                        boolean retryNonIdempotent, RetryListener retryListener) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.jitter = Math.max(0, Math.min(1, jitter));
+        this.retryNonIdempotent = retryNonIdempotent;
+        mRetryListener = retryListener;
+    }
+
+    public static RetryPolicy exponential(int maxRetries) {
+        return new RetryPolicy(maxRetries, 500, 8000, 0.5f);
+    }
+
+    /**
+     * @return copy of this policy which retries non-idempotent tasks as well.
+     */
+    public RetryPolicy retryingNonIdempotent() {
+        return new RetryPolicy(maxRetries, baseDelay, maxDelay, jitter, true, mRetryListener);
+    }
+
+    /**
+     * @return copy of this policy which notifies retryListener before every
+     * retry.
+     */
+    public RetryPolicy withRetryListener(RetryListener retryListener) {
+        return new RetryPolicy(maxRetries, baseDelay, maxDelay, jitter, retryNonIdempotent, retryListener);
+    }
+
+    /**
+     * @param retryCount count of retries already made.
+     */
+    public boolean shouldRetry(int retryCount, boolean idempotent, TaskException ex) {
+        if (retryCount >= maxRetries) return false;
+        if (!idempotent && !retryNonIdempotent) return false;
+        return !(ex instanceof ApiException);
+    }
+
+    public long getDelay(int retryCount) {
+        long delay = baseDelay << Math.min(retryCount, 30);
+        if (delay <= 0 || delay > maxDelay) delay = maxDelay;
+        double factor;
+        synchronized (mRandom) {
+            factor = 1 - jitter * mRandom.nextDouble();
+        }
+        return (long) (delay * factor);
+    }
+
+    void notifyRetry(AbstractApiTask<?> task, int retryCount, long delay, TaskException ex) {
+        if (mRetryListener != null) mRetryListener.onRetry(task, retryCount, delay, ex);
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.task.AbstractTask;
+import com.laxture.lib.task.TaskException;
+import com.laxture.lib.task.TaskListener;
+import com.laxture.lib.task.TaskManager;
+import com.laxture.lib.util.LLog;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * Run tasks in priority lanes instead of {@link TaskManager#runImmediately}.
+ *
+ * Every lane has its own concurrency limit, and a lane only starts tasks when
+ * no higher lane has tasks waiting, so the request for the page user is looking
+ * at is never queued behind prefetch or update traffic. Tasks already running
+ * are not interrupted.
+ *
+ * Priority of a task can be changed by {@link #setPriority(AbstractTask, Priority)}
+ * while it is waiting or running, e.g. when a prefetched page becomes visible.
+ * Completion is detected by task listeners, which are added once per task, so
+ * a task can be run again after it is done. Don't call
+ * removeAllTaskListeners() on a scheduled task, use {@link #cancel(AbstractTask)}
+ * instead.
+ *
+ * {@link ApiRequestCoalescer} and {@link ApiBatcher} run their tasks by
+ * {@link TaskManager} directly, so those tasks don't take lane slots and
+ * aren't limited by lane concurrency.
+ */
+public class TaskScheduler {
+
+    public enum Priority {
+        UserVisible, Prefetch, Background
+    }
+
+    private static final int[] DEFAULT_CONCURRENCY = { 4, 2, 1 };
+
+    private static TaskScheduler sDefault;
+
+    public static synchronized TaskScheduler getDefault() {
+        if (sDefault == null) sDefault = new TaskScheduler();
+        return sDefault;
+    }
+
+    private final int[] mConcurrency = DEFAULT_CONCURRENCY.clone();
+    private final int[] mRunningCount = new int[Priority.values().length];
+    private final List<LinkedList<AbstractTask<?>>> mPendingTasks = new ArrayList<>();
+
+    // priority of every waiting or running task
+    private final IdentityHashMap<AbstractTask<?>, Priority> mPriorities = new IdentityHashMap<>();
+    private final IdentityHashMap<AbstractTask<?>, Boolean> mRunningTasks = new IdentityHashMap<>();
+
+    // tasks which already have completion listeners, kept weakly so a task
+    // run again doesn't pile up listeners
+    private final WeakHashMap<AbstractTask<?>, Boolean> mListenedTasks = new WeakHashMap<>();
+
+    public TaskScheduler() {
+        for (int i = 0; i < Priority.values().length; i++) {
+            mPendingTasks.add(new LinkedList<AbstractTask<?>>());
+        }
+    }
+
+    public synchronized void setConcurrency(Priority priority, int concurrency) {
+        mConcurrency[priority.ordinal()] = Math.max(1, concurrency);
+    }
+
+    //*************************************************************************
+    //  Public Method
+    //*************************************************************************
+
+    public void run(final AbstractTask<?> task, Priority priority) {
+        boolean listened;
+        synchronized (this) {
+            if (mPriorities.containsKey(task)) return;
+            listened = mListenedTasks.put(task, Boolean.TRUE) != null;
+        }
+
+        // listen before queued, another thread might start the task right away.
+        if (!listened) listen(task);
+
+        synchronized (this) {
+            mPriorities.put(task, priority);
+            mPendingTasks.get(priority.ordinal()).add(task);
+        }
+        schedule();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void listen(final AbstractTask<?> task) {
+        AbstractTask rawTask = task;
+        rawTask.addFinishedListener(new TaskListener.TaskFinishedListener() {
+            @Override
+            public void onTaskFinished(Object result) {
+                onTaskDone(task);
+            }
+        });
+        rawTask.addFailedListener(new TaskListener.TaskFailedListener() {
+            @Override
+            public void onTaskFailed(Object result, TaskException ex) {
+                onTaskDone(task);
+            }
+        });
+        rawTask.addCancelledListener(new TaskListener.TaskCancelledListener() {
+            @Override
+            public void onTaskCancelled(Object result) {
+                onTaskDone(task);
+            }
+        });
+    }
+
+    /**
+     * Move a waiting or running task to another lane. Running task keeps
+     * running, but it takes the slot of the new lane.
+     */
+    public void setPriority(AbstractTask<?> task, Priority priority) {
+        synchronized (this) {
+            Priority current = mPriorities.get(task);
+            if (current == null || current == priority) return;
+            mPriorities.put(task, priority);
+            if (mRunningTasks.containsKey(task)) {
+                mRunningCount[current.ordinal()]--;
+                mRunningCount[priority.ordinal()]++;
+            } else {
+                mPendingTasks.get(current.ordinal()).remove(task);
+                mPendingTasks.get(priority.ordinal()).add(task);
+            }
+            LLog.d("Task %s is moved from %s to %s", task, current, priority);
+        }
+        schedule();
+    }
+
+    public Priority getPriority(AbstractTask<?> task) {
+        synchronized (this) {
+            return mPriorities.get(task);
+        }
+    }
+
+    /**
+     * Drop a waiting task, or stop it if it is already running. Either way
+     * the task is cancelled, so its cancel listeners are notified.
+     */
+    public void cancel(AbstractTask<?> task) {
+        synchronized (this) {
+            Priority priority = mPriorities.get(task);
+            if (priority != null && !mRunningTasks.containsKey(task)) {
+                // never started, no slot to release
+                mPendingTasks.get(priority.ordinal()).remove(task);
+                mPriorities.remove(task);
+            }
+        }
+        task.cancel();
+    }
+
+    public synchronized int getPendingCount(Priority priority) {
+        return mPendingTasks.get(priority.ordinal()).size();
+    }
+
+    public synchronized int getRunningCount(Priority priority) {
+        return mRunningCount[priority.ordinal()];
+    }
+
+    //*************************************************************************
+    //  Internal Stuff
+    //*************************************************************************
+
+    private void onTaskDone(AbstractTask<?> task) {
+        synchronized (this) {
+            Priority priority = mPriorities.remove(task);
+            if (priority == null) return;
+            if (mRunningTasks.remove(task) != null) mRunningCount[priority.ordinal()]--;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        List<AbstractTask<?>> readyTasks = new ArrayList<>();
+        synchronized (this) {
+            for (Priority priority : Priority.values()) {
+                LinkedList<AbstractTask<?>> pending = mPendingTasks.get(priority.ordinal());
+                while (!pending.isEmpty()
+                        && mRunningCount[priority.ordinal()] < mConcurrency[priority.ordinal()]) {
+                    AbstractTask<?> task = pending.removeFirst();
+                    mRunningTasks.put(task, Boolean.TRUE);
+                    mRunningCount[priority.ordinal()]++;
+                    readyTasks.add(task);
+                }
+                // lower lanes wait until this lane is drained
+                if (!pending.isEmpty()) break;
+            }
+        }
+        for (AbstractTask<?> task : readyTasks) {
+            TaskManager.runImmediately(task);
+        }
+    }
+
+}
@@ -2,7 +2,6 @@ package com.laxture.skeleton.updater;
 
 import com.laxture.skeleton.request.AbstractApiTask;
 import com.laxture.skeleton.updater.VersionUpdater.VersionInfo;
-import com.laxture.skeleton.util.GsonUtil;
 
 public class CheckUpdateTask extends AbstractApiTask<VersionInfo> {
 
@@ -11,11 +10,13 @@ public class CheckUpdateTask extends AbstractApiTask<VersionInfo> {
     }
 
     @Override
-    public void init() {}
+    public void init() {
+        setStreamingDecode(true);
+    }
 
     @Override
     protected VersionInfo generateResult() {
-        return GsonUtil.fromJson(getResponseText(), VersionInfo.class);
+        return getDecodedResult();
     }
 
 }
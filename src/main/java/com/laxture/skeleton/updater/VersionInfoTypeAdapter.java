@@ -0,0 +1,99 @@
+package com.laxture.skeleton.updater;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.laxture.skeleton.updater.VersionUpdater.VersionInfo;
+import com.laxture.skeleton.util.GsonUtil;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Streaming TypeAdapter of {@link VersionInfo}, bound by
+ * {@link com.google.gson.annotations.JsonAdapter} so Gson doesn't need to
+ * reflect its fields. Fields annotated by {@link GsonUtil.SkipJson} are
+ * skipped as reflection does. Keep it in sync with fields of
+ * {@link VersionInfo}, VersionInfoTypeAdapterTest checks it against the
+ * reflective output.
+ */
+@SuppressWarnings("deprecation")
+public class VersionInfoTypeAdapter extends TypeAdapter<VersionInfo> {
+
+    private static final Set<String> SKIP_SERIALIZE =
+            GsonUtil.getSkippedFields(VersionInfo.class, true);
+    private static final Set<String> SKIP_DESERIALIZE =
+            GsonUtil.getSkippedFields(VersionInfo.class, false);
+
+    @Override
+    public void write(JsonWriter out, VersionInfo value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        if (value.mainVersion != null && write("mainVersion")) out.name("mainVersion").value(value.mainVersion);
+        if (write("buildNum")) out.name("buildNum").value(value.buildNum);
+        if (value.url != null && write("url")) out.name("url").value(value.url);
+        if (write("force")) out.name("force").value(value.force);
+        if (write("forceUpdateUnderBuildNum")) out.name("forceUpdateUnderBuildNum").value(value.forceUpdateUnderBuildNum);
+        if (value.features != null && write("features")) {
+            out.name("features").beginArray();
+            for (String feature : value.features) out.value(feature);
+            out.endArray();
+        }
+        if (write("hasUpdate")) out.name("hasUpdate").value(value.hasUpdate);
+        out.endObject();
+    }
+
+    @Override
+    public VersionInfo read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        VersionInfo info = new VersionInfo();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL || SKIP_DESERIALIZE.contains(name)) {
+                in.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "mainVersion":
+                    info.mainVersion = GsonUtil.readString(in);
+                    break;
+                case "buildNum":
+                    info.buildNum = in.nextInt();
+                    break;
+                case "url":
+                    info.url = GsonUtil.readString(in);
+                    break;
+                case "force":
+                    info.force = GsonUtil.readBoolean(in);
+                    break;
+                case "forceUpdateUnderBuildNum":
+                    info.forceUpdateUnderBuildNum = in.nextInt();
+                    break;
+                case "features":
+                    info.features = GsonUtil.readStringArray(in);
+                    break;
+                case "hasUpdate":
+                    info.hasUpdate = GsonUtil.readBoolean(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return info;
+    }
+
+    private static boolean write(String name) {
+        return !SKIP_SERIALIZE.contains(name);
+    }
+
+}
@@ -11,15 +11,16 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.laxture.lib.RuntimeContext;
 import com.laxture.lib.task.TaskException;
 import com.laxture.lib.task.TaskListener;
-import com.laxture.lib.task.TaskManager;
 import com.laxture.lib.util.IntentUtil;
 import com.laxture.lib.util.LLog;
 import com.laxture.lib.util.UnHandledException;
 import com.laxture.skeleton.PrefKeys;
 import com.laxture.skeleton.R;
+import com.laxture.skeleton.request.TaskScheduler;
 import com.laxture.skeleton.view.dialog.DialogController;
 import com.laxture.skeleton.view.dialog.DialogController.DialogActionHandler;
 
@@ -31,6 +32,7 @@ import androidx.core.app.NotificationCompat;
 
 public class VersionUpdater {
 
+    @JsonAdapter(VersionInfoTypeAdapter.class)
     public static class VersionInfo {
         public String mainVersion;
         public int buildNum;
@@ -176,7 +178,7 @@ public class VersionUpdater {
             }
         });
 
-        TaskManager.runImmediately(sInstance.mCheckUpdateTask);
+        TaskScheduler.getDefault().run(sInstance.mCheckUpdateTask, TaskScheduler.Priority.Background);
     }
 
     public void downloadUpdate() {
@@ -329,7 +331,7 @@ public class VersionUpdater {
 
         mNotificationManager.notify(R.id.notification_downloading, mDownloadNotificationBuilder.build());
 
-        TaskManager.runImmediately(mApkDownloadTask);
+        TaskScheduler.getDefault().run(mApkDownloadTask, TaskScheduler.Priority.Background);
     }
 
     //*************************************************************************
@@ -0,0 +1,236 @@
+package com.laxture.skeleton.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
+
+/**
+ * Single pass parser/printer for the date formats exchanged with server:
+ * <ul>
+ *     <li>epoch seconds, e.g. <code>1420070400</code></li>
+ *     <li>fractional epoch seconds submitted by iOS, e.g. <code>1420070400.123</code></li>
+ *     <li><code>yyyy-MM-dd'T'HH:mm:ss.SSSZ</code>, fraction and offset are optional</li>
+ * </ul>
+ * Parsing works on chars of the input directly, it doesn't create substring
+ * nor throw exception. Caller should fallback to Joda when {@link #INVALID}
+ * is returned.
+ */
+final class DateTimeCodec {
+
+    static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private DateTimeCodec() {}
+
+    //*************************************************************************
+    //  Parse
+    //*************************************************************************
+
+    static long parseMillis(String str) {
+        if (str == null || str.length() == 0) return INVALID;
+        char first = str.charAt(0);
+        if (first == '-' || (isDigit(first) && !isIsoDate(str))) return parseEpochSeconds(str);
+        return parseIso(str);
+    }
+
+    private static boolean isIsoDate(String str) {
+        return str.length() >= 10 && str.charAt(4) == '-' && str.charAt(7) == '-';
+    }
+
+    private static long parseEpochSeconds(String str) {
+        int length = str.length();
+        int pos = 0;
+        boolean negative = false;
+        if (str.charAt(0) == '-') {
+            negative = true;
+            pos++;
+        }
+
+        int start = pos;
+        long seconds = 0;
+        while (pos < length && isDigit(str.charAt(pos))) {
+            seconds = seconds * 10 + (str.charAt(pos) - '0');
+            pos++;
+        }
+        int digits = pos - start;
+        if (digits == 0 || digits > 15) return INVALID;
+
+        // in case timestamp is submitted by iOS, fraction is dropped
+        if (pos < length) {
+            if (str.charAt(pos) != '.' || pos == length - 1) return INVALID;
+            for (pos++; pos < length; pos++) {
+                if (!isDigit(str.charAt(pos))) return INVALID;
+            }
+        }
+
+        return (negative ? -seconds : seconds) * 1000;
+    }
+
+    private static long parseIso(String str) {
+        int length = str.length();
+        if (length < 19 || str.charAt(10) != 'T'
+                || str.charAt(13) != ':' || str.charAt(16) != ':') return INVALID;
+
+        int year = readInt(str, 0, 4);
+        int month = readInt(str, 5, 2);
+        int day = readInt(str, 8, 2);
+        int hour = readInt(str, 11, 2);
+        int minute = readInt(str, 14, 2);
+        int second = readInt(str, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 59) return INVALID;
+
+        int pos = 19;
+        int millis = 0;
+        if (pos < length && str.charAt(pos) == '.') {
+            pos++;
+            int start = pos;
+            while (pos < length && isDigit(str.charAt(pos))) {
+                // digits beyond millisecond are truncated
+                if (pos - start < 3) millis = millis * 10 + (str.charAt(pos) - '0');
+                pos++;
+            }
+            int digits = pos - start;
+            if (digits == 0) return INVALID;
+            for (int i = digits; i < 3; i++) millis *= 10;
+        }
+
+        long localMillis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60 + minute) * 60 + second) * 1000L + millis;
+
+        // no offset, take it as local time of default zone
+        if (pos == length) {
+            return DateTimeZone.getDefault().convertLocalToUTC(localMillis, false);
+        }
+
+        char sign = str.charAt(pos);
+        if (sign == 'Z') return pos + 1 == length ? localMillis : INVALID;
+        if (sign != '+' && sign != '-') return INVALID;
+        pos++;
+
+        // accept +HH, +HHmm and +HH:mm
+        int offsetHour = readInt(str, pos, 2);
+        if (offsetHour < 0 || offsetHour > 23) return INVALID;
+        pos += 2;
+        int offsetMinute = 0;
+        if (pos < length) {
+            if (str.charAt(pos) == ':') pos++;
+            offsetMinute = readInt(str, pos, 2);
+            if (offsetMinute < 0 || offsetMinute > 59) return INVALID;
+            pos += 2;
+        }
+        if (pos != length) return INVALID;
+
+        long offset = (offsetHour * 60 + offsetMinute) * 60000L;
+        return sign == '+' ? localMillis - offset : localMillis + offset;
+    }
+
+    /**
+     * @return parsed number, or -1 if there is any non-digit char.
+     */
+    private static int readInt(String str, int start, int count) {
+        if (start + count > str.length()) return -1;
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = str.charAt(i);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    //*************************************************************************
+    //  Print
+    //*************************************************************************
+
+    /**
+     * Same output as pattern <code>yyyy-MM-dd'T'HH:mm:ss.SSSZ</code>.
+     *
+     * @return null if the DateTime cannot be printed by fast path, e.g. non-ISO
+     * chronology or year out of 0~9999.
+     */
+    static String print(DateTime dateTime) {
+        if (!(dateTime.getChronology() instanceof ISOChronology)) return null;
+
+        long instant = dateTime.getMillis();
+        int offset = dateTime.getZone().getOffset(instant);
+        if (offset % 60000 != 0) return null;
+
+        long localMillis = instant + offset;
+        long days = localMillis / MILLIS_PER_DAY;
+        if (localMillis % MILLIS_PER_DAY < 0) days--;
+        int millisOfDay = (int) (localMillis - days * MILLIS_PER_DAY);
+
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) return null;
+
+        char[] buf = new char[28];
+        write(buf, 0, (int) year, 4);
+        buf[4] = '-';
+        write(buf, 5, month, 2);
+        buf[7] = '-';
+        write(buf, 8, day, 2);
+        buf[10] = 'T';
+        write(buf, 11, millisOfDay / 3600000, 2);
+        buf[13] = ':';
+        write(buf, 14, millisOfDay / 60000 % 60, 2);
+        buf[16] = ':';
+        write(buf, 17, millisOfDay / 1000 % 60, 2);
+        buf[19] = '.';
+        write(buf, 20, millisOfDay % 1000, 3);
+        int offsetMinutes = offset / 60000;
+        buf[23] = offsetMinutes < 0 ? '-' : '+';
+        offsetMinutes = Math.abs(offsetMinutes);
+        write(buf, 24, offsetMinutes / 60, 2);
+        write(buf, 26, offsetMinutes % 60, 2);
+        return new String(buf);
+    }
+
+    private static void write(char[] buf, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    //*************************************************************************
+    //  Calendar Math
+    //*************************************************************************
+
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yoe = year - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+}
@@ -4,14 +4,16 @@ import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 import com.laxture.lib.util.Checker;
 import com.laxture.lib.util.LLog;
 
@@ -19,12 +21,19 @@ import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import java.io.EOFException;
+import java.io.IOException;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class GsonUtil {
 
@@ -34,12 +43,26 @@ public class GsonUtil {
             // skip fields annotated with @SkipJson
             .addSerializationExclusionStrategy(new SkipFieldSerializeExclusionStrategy())
             .addDeserializationExclusionStrategy(new SkipFieldDeserializeExclusionStrategy())
+            // model classes annotated with @JsonAdapter are picked up by Gson
+            // directly, and skip ReflectiveTypeAdapterFactory
             .registerTypeAdapter(DateTime.class, new DateTimeTypeAdapter())
+            .registerTypeAdapter(String.class, new StringTypeAdapter())
             .registerTypeAdapter(Boolean.class, new BooleanTypeAdapter())
             .registerTypeAdapter(boolean.class, new BooleanTypeAdapter()).create();
 
     private static final DateTimeFormatter DTF = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
 
+    private static volatile boolean sInternAllStrings;
+
+    /**
+     * Deduplicate every decoded string value by {@link StringPool#getDefault()}.
+     * Off by default, to dedup particular fields only, annotate them by
+     * <code>@JsonAdapter(GsonUtil.InternStringTypeAdapterFactory.class)</code>.
+     */
+    public static void setInternAllStrings(boolean internAllStrings) {
+        sInternAllStrings = internAllStrings;
+    }
+
     //***********************Serialization****************************
 
     /**
@@ -115,62 +138,310 @@ public class GsonUtil {
         }
     }
 
+    /**
+     * Util method for {@link Gson#fromJson(JsonReader, Type)}. Unlike other
+     * fromJson methods, decode error is thrown to caller since the stream
+     * cannot be read again.
+     *
+     * @throws IOException if underlying stream fails, which Gson wraps in
+     * JsonSyntaxException or JsonIOException, so it is not mistaken for a
+     * format error.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T fromJson(JsonReader reader, Type type) throws IOException, JsonParseException {
+        try {
+            return (T) GSON.fromJson(reader, type);
+        } catch (JsonParseException e) {
+            Throwable cause = e.getCause();
+            // malformed or truncated document is still a format error
+            if (cause instanceof IOException && !(cause instanceof MalformedJsonException)
+                    && !(cause instanceof EOFException)) {
+                throw (IOException) cause;
+            }
+            throw e;
+        }
+    }
+
     //***********************Custom Date Serializer****************************
 
-    private static final class BooleanTypeAdapter implements JsonSerializer<Boolean>,
-                                                             JsonDeserializer<Boolean> {
+    private static final class BooleanTypeAdapter extends TypeAdapter<Boolean> {
 
         @Override
-        public JsonElement serialize(Boolean src, Type typeOfSrc,
-                JsonSerializationContext context) {
-            return new JsonPrimitive(src);
+        public void write(JsonWriter out, Boolean value) throws IOException {
+            out.value(value);
         }
 
         @Override
-        public Boolean deserialize(JsonElement json, Type typeOfT,
-                JsonDeserializationContext context) throws JsonParseException {
-            if (json.getAsString().equals("true")) return true;
-            if (json.getAsString().equals("false")) return false;
-            if (json.getAsInt() == 1) return true;
-            if (json.getAsInt() == 0) return false;
-            return json.getAsBoolean();
+        public Boolean read(JsonReader in) throws IOException {
+            return readBoolean(in);
         }
     }
 
-    private static final class DateTimeTypeAdapter implements JsonSerializer<DateTime>,
-                                                              JsonDeserializer<DateTime> {
+    private static final class DateTimeTypeAdapter extends TypeAdapter<DateTime> {
 
         @Override
-        public JsonElement serialize(DateTime src, Type typeOfSrc,
-                JsonSerializationContext context) {
-            return new JsonPrimitive(DTF.print(src));
+        public void write(JsonWriter out, DateTime value) throws IOException {
+            writeDateTime(out, value);
         }
 
         @Override
-        public DateTime deserialize(JsonElement json, Type typeOfT,
-                JsonDeserializationContext context) throws JsonParseException {
-            if (!(json instanceof JsonPrimitive)) {
-                throw new JsonParseException(
-                        "The date should be a string value");
-            }
-            String str = json.getAsString();
-            if (Checker.isEmpty(str)) return null;
-            Long dateLong = null;
+        public DateTime read(JsonReader in) throws IOException {
+            return readDateTime(in);
+        }
+    }
+
+    static DateTime parseDateTime(String str) {
+        if (Checker.isEmpty(str)) return null;
+
+        long millis = DateTimeCodec.parseMillis(str);
+        if (millis != DateTimeCodec.INVALID) return new DateTime(millis);
+
+        // formats beyond DateTimeCodec, resolve them by Joda
+        Long dateLong = null;
+        try {
+            // in case timestamp is submitted by iOS
+            dateLong = (str.indexOf(".") > 0)
+                    ? Long.parseLong(str.substring(0, str.indexOf(".")))
+                    : Long.parseLong(str);
+        } catch (NumberFormatException ignored) {}
+
+        if (dateLong != null) return new DateTime(dateLong * 1000);
+        else
             try {
-                // in case timestamp is submitted by iOS
-                dateLong = (str.indexOf(".") > 0)
-                        ? Long.parseLong(str.substring(0, str.indexOf(".")))
-                        : json.getAsLong();
-            } catch (NumberFormatException ignored) {}
+                return new DateTime(str);
+            } catch (IllegalArgumentException e) {
+                LLog.d("Failed to resolve date by default format");
+                return DTF.parseDateTime(str);
+            }
+    }
+
+    //*************************Streaming Helpers*******************************
+
+    // Shared by hand-written model TypeAdapters (see @JsonAdapter), so they
+    // decode values the same way as the adapters registered in GSON.
+
+    public static String readString(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case BOOLEAN:
+                return Boolean.toString(in.nextBoolean());
+            default:
+                return in.nextString();
+        }
+    }
+
+    public static String[] readStringArray(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<String> items = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            items.add(readString(in));
+        }
+        in.endArray();
+        return items.toArray(new String[items.size()]);
+    }
 
-            if (dateLong != null) return new DateTime(dateLong * 1000);
-            else
-                try {
-                    return new DateTime(str);
-                } catch (IllegalArgumentException e) {
-                    LLog.d("Failed to resolve date by default format");
-                    return DTF.parseDateTime(str);
-                }
+    public static Boolean readBoolean(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case BOOLEAN:
+                return in.nextBoolean();
+            case NUMBER:
+                return in.nextInt() == 1;
+            default:
+                String str = in.nextString();
+                if ("true".equals(str) || "1".equals(str)) return true;
+                if ("false".equals(str) || "0".equals(str)) return false;
+                return Boolean.parseBoolean(str);
+        }
+    }
+
+    public static DateTime readDateTime(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NULL:
+                in.nextNull();
+                return null;
+            case STRING:
+            case NUMBER:
+                return parseDateTime(in.nextString());
+            default:
+                throw new JsonParseException("The date should be a string value");
+        }
+    }
+
+    public static void writeDateTime(JsonWriter out, DateTime value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        String str = DateTimeCodec.print(value);
+        out.value(str != null ? str : DTF.print(value));
+    }
+
+    //*********************Comma Separated Value Adapter***********************
+
+    /**
+     * Decode <code>key:"value1,value2,value3"</code> to <code>String[]</code>
+     * or <code>List&lt;String&gt;</code> field in single pass. JSON array
+     * value is accepted as well. Bind it to field by
+     * <pre>{@code
+     *     @JsonAdapter(GsonUtil.CommaSeparatedTypeAdapterFactory.class)
+     *     public String[] tags;
+     * }</pre>
+     */
+    public static final class CommaSeparatedTypeAdapterFactory implements TypeAdapterFactory {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<? super T> rawType = type.getRawType();
+            if (rawType == String[].class) {
+                return (TypeAdapter<T>) new CommaSeparatedTypeAdapter<>(
+                        gson.getAdapter(String[].class), true);
+            }
+            if (List.class.isAssignableFrom(rawType)) {
+                return (TypeAdapter<T>) new CommaSeparatedTypeAdapter<>(
+                        gson.getAdapter(new TypeToken<List<String>>() {}), false);
+            }
+            throw new IllegalArgumentException(
+                    "CommaSeparatedTypeAdapterFactory only supports String[] and List<String>");
+        }
+    }
+
+    private static final class CommaSeparatedTypeAdapter<T> extends TypeAdapter<T> {
+
+        private final TypeAdapter<T> mDelegate;
+        private final boolean mArray;
+
+        CommaSeparatedTypeAdapter(TypeAdapter<T> delegate, boolean array) {
+            mDelegate = delegate;
+            mArray = array;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            mDelegate.write(out, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.STRING) return mDelegate.read(in);
+
+            List<String> items = splitCommaSeparated(in.nextString());
+            return mArray ? (T) items.toArray(new String[items.size()]) : (T) items;
+        }
+    }
+
+    static List<String> splitCommaSeparated(String value) {
+        List<String> items = new ArrayList<>();
+        int itemStart = 0;
+        int length = value.length();
+        for (int i = 0; i <= length; i++) {
+            if (i < length && value.charAt(i) != ',') continue;
+            // remove last empty item, same as wrapBracket()
+            if (i == length && i == itemStart) break;
+            items.add(value.substring(itemStart, i));
+            itemStart = i + 1;
+        }
+        return items;
+    }
+
+    //*****************************String Adapter******************************
+
+    private static final class StringTypeAdapter extends TypeAdapter<String> {
+
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public String read(JsonReader in) throws IOException {
+            String value = readString(in);
+            return sInternAllStrings ? StringPool.getDefault().intern(value) : value;
+        }
+    }
+
+    //*********************Interned String Adapter*****************************
+
+    /**
+     * Deduplicate values of String, <code>String[]</code> or
+     * <code>List&lt;String&gt;</code> field by {@link StringPool#getDefault()},
+     * for fields repeated in many elements of a list response, e.g.
+     * <pre>{@code
+     *     @JsonAdapter(GsonUtil.InternStringTypeAdapterFactory.class)
+     *     public String category;
+     * }</pre>
+     */
+    public static final class InternStringTypeAdapterFactory implements TypeAdapterFactory {
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            Class<? super T> rawType = type.getRawType();
+            if (rawType == String.class) {
+                return (TypeAdapter<T>) new InternStringTypeAdapter();
+            }
+            if (rawType == String[].class || List.class.isAssignableFrom(rawType)) {
+                return (TypeAdapter<T>) new InternStringListTypeAdapter<>(
+                        gson.getAdapter(type), rawType == String[].class);
+            }
+            throw new IllegalArgumentException(
+                    "InternStringTypeAdapterFactory only supports String, String[] and List<String>");
+        }
+    }
+
+    private static final class InternStringTypeAdapter extends TypeAdapter<String> {
+
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public String read(JsonReader in) throws IOException {
+            return StringPool.getDefault().intern(readString(in));
+        }
+    }
+
+    private static final class InternStringListTypeAdapter<T> extends TypeAdapter<T> {
+
+        private final TypeAdapter<T> mDelegate;
+        private final boolean mArray;
+
+        InternStringListTypeAdapter(TypeAdapter<T> delegate, boolean array) {
+            mDelegate = delegate;
+            mArray = array;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            mDelegate.write(out, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            StringPool pool = StringPool.getDefault();
+            List<String> items = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                items.add(pool.intern(readString(in)));
+            }
+            in.endArray();
+            return mArray ? (T) items.toArray(new String[items.size()]) : (T) items;
         }
     }
 
@@ -207,6 +478,25 @@ public class GsonUtil {
         }
     }
 
+    /**
+     * Names of public fields excluded by {@link SkipJson}, so hand-written
+     * TypeAdapters skip the same fields as reflection does.
+     *
+     * @param serialize true for fields skipped on serialization, false for
+     *                  fields skipped on deserialization.
+     */
+    public static Set<String> getSkippedFields(Class<?> clazz, boolean serialize) {
+        Set<String> skipped = new HashSet<>();
+        for (Field field : clazz.getFields()) {
+            SkipJson annotation = field.getAnnotation(SkipJson.class);
+            if (annotation == null) continue;
+            if (serialize ? !annotation.serialize() : !annotation.deserialize()) {
+                skipped.add(field.getName());
+            }
+        }
+        return skipped;
+    }
+
     //*****************************Util Methods********************************
 
     public static String optString(JsonObject json, String fieldName) {
@@ -238,38 +528,44 @@ public class GsonUtil {
      * ->
      * key:["value1","value2","value3"]
      *
+     * Prefer {@link CommaSeparatedTypeAdapterFactory} on the field, which
+     * splits the value while decoding and needs no rewrite of JSON text.
+     *
      * @param json
      * @param keyword
      * @return
      */
     public static String wrapBracket(String json, String keyword) {
-        StringBuilder sb = new StringBuilder(json);
-        keyword = '"'+keyword+'"'+':';
-        int startIndex = 0;
-
-        while (sb.indexOf(keyword, startIndex) > 0) {
-
-            startIndex = sb.indexOf(keyword, startIndex)+keyword.length();
-            int endIndex = sb.indexOf("\"", startIndex+1)+1;
-
-            // wrap barcket
-            sb.insert(startIndex++, "[");
-            sb.insert(++endIndex, "]");
-
-            // wrap quote to items
-            for (int i=startIndex; i<=endIndex; i++) {
-                if (sb.charAt(i) != ',') continue;
-                sb.insert(i, "\"");
-                sb.insert(i+2, "\"");
-                endIndex += 2;
-                i += 2;
+        String key = '"' + keyword + '"' + ':';
+        StringBuilder sb = new StringBuilder(json.length() + 16);
+        int copiedIndex = 0;
+        int keyIndex;
+
+        while ((keyIndex = json.indexOf(key, copiedIndex)) > 0) {
+            int valueStart = keyIndex + key.length();
+            sb.append(json, copiedIndex, valueStart);
+            copiedIndex = valueStart;
+
+            // only string value could be wrapped
+            if (valueStart >= json.length() || json.charAt(valueStart) != '"') continue;
+            int valueEnd = json.indexOf('"', valueStart + 1);
+            if (valueEnd < 0) break;
+
+            sb.append('[');
+            int itemStart = valueStart + 1;
+            for (int i = itemStart; i <= valueEnd; i++) {
+                if (i < valueEnd && json.charAt(i) != ',') continue;
+                // remove last empty item
+                if (i == valueEnd && i == itemStart) break;
+                if (itemStart > valueStart + 1) sb.append(',');
+                sb.append('"').append(json, itemStart, i).append('"');
+                itemStart = i + 1;
             }
-
-            // remove last empty item
-            if (sb.charAt(endIndex-2) == '"') sb.delete(endIndex-4, endIndex-1);
-
+            sb.append(']');
+            copiedIndex = valueEnd + 1;
         }
 
+        sb.append(json, copiedIndex, json.length());
         return sb.toString();
     }
 }
@@ -0,0 +1,242 @@
+package com.laxture.skeleton.util;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list backed by raw UTF-8 bytes of a JSON array. Offsets of
+ * elements are found in one scan, and an element is decoded only when it is
+ * asked by {@link #get(int)}, with a small LRU of decoded elements. So memory
+ * of decoded objects scales with what is on screen instead of the size of
+ * response.
+ *
+ * Iterating, hashCode(), equals() against other list type, or copying the
+ * list into another collection decodes every element, which defeats the
+ * purpose. Adapters should read it by position, and keep it as it is instead
+ * of copying, it is read-only anyway.
+ */
+public class LazyJsonList<T> extends AbstractList<T> implements RandomAccess {
+
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private final byte[] mBuffer;
+    private final Type mElementType;
+    private int[] mStarts = new int[16];
+    private int[] mEnds = new int[16];
+    private int mSize;
+
+    private final LinkedHashMap<Integer, T> mDecoded;
+
+    public static <T> LazyJsonList<T> read(InputStream inputStream, Type elementType) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return new LazyJsonList<>(out.toByteArray(), elementType, DEFAULT_CACHE_SIZE);
+    }
+
+    public static <T> LazyJsonList<T> parse(String json, Type elementType) {
+        try {
+            return new LazyJsonList<>(json.getBytes("UTF-8"), elementType, DEFAULT_CACHE_SIZE);
+        } catch (IOException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @throws JsonSyntaxException if buffer is not a JSON array.
+     */
+    public LazyJsonList(byte[] buffer, Type elementType, final int cacheSize) {
+        mBuffer = buffer;
+        mElementType = elementType;
+        mDecoded = new LinkedHashMap<Integer, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        index();
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized T get(int location) {
+        if (location < 0 || location >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + location + ", size " + mSize);
+        }
+        T element = mDecoded.get(location);
+        if (element == null && !mDecoded.containsKey(location)) {
+            element = decode(mStarts[location], mEnds[location]);
+            mDecoded.put(location, element);
+        }
+        return element;
+    }
+
+    /**
+     * Elements with same raw bytes are taken as equal without decoding them,
+     * only elements which differ are decoded and compared, so comparing
+     * lists of an unchanged response is cheap.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (object == this) return true;
+        if (!(object instanceof LazyJsonList)) return super.equals(object);
+        LazyJsonList<?> other = (LazyJsonList<?>) object;
+        if (mSize != other.mSize) return false;
+        boolean sameType = mElementType.equals(other.mElementType);
+        for (int i = 0; i < mSize; i++) {
+            if (sameType && rawEquals(i, other)) continue;
+            Object element = get(i);
+            Object otherElement = other.get(i);
+            if (element == null ? otherElement != null : !element.equals(otherElement)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Same as any other List, so every element is decoded.
+     */
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    private boolean rawEquals(int location, LazyJsonList<?> other) {
+        int start = mStarts[location];
+        int otherStart = other.mStarts[location];
+        int length = mEnds[location] - start;
+        if (length != other.mEnds[location] - otherStart) return false;
+        for (int i = 0; i < length; i++) {
+            if (mBuffer[start + i] != other.mBuffer[otherStart + i]) return false;
+        }
+        return true;
+    }
+
+    private T decode(int start, int end) {
+        try {
+            JsonReader reader = new JsonReader(new InputStreamReader(
+                    new ByteArrayInputStream(mBuffer, start, end - start), "UTF-8"));
+            return GsonUtil.fromJson(reader, mElementType);
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        }
+    }
+
+    //*************************************************************************
+    //  Index
+    //*************************************************************************
+
+    // structural characters are all ASCII, and bytes of multi-byte UTF-8
+    // sequence are never ASCII, so scanning bytes is safe.
+    private void index() {
+        int i = skipWhitespace(0);
+        if (i >= mBuffer.length || mBuffer[i] != '[') throw malformed(i);
+        i = skipWhitespace(i + 1);
+        if (i < mBuffer.length && mBuffer[i] == ']') return;
+
+        while (true) {
+            int start = i;
+            i = skipValue(i);
+            if (i == start) throw malformed(i);
+            addElement(start, i);
+
+            i = skipWhitespace(i);
+            if (i >= mBuffer.length) throw malformed(i);
+            if (mBuffer[i] == ']') return;
+            if (mBuffer[i] != ',') throw malformed(i);
+            i = skipWhitespace(i + 1);
+        }
+    }
+
+    /**
+     * @return end offset (exclusive) of value starts at offset.
+     */
+    private int skipValue(int offset) {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = offset; i < mBuffer.length; i++) {
+            byte b = mBuffer[i];
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                    if (depth == 0) return i + 1;
+                }
+                continue;
+            }
+            switch (b) {
+                case '"':
+                    inString = true;
+                    break;
+                case '[':
+                case '{':
+                    depth++;
+                    break;
+                case ']':
+                case '}':
+                    // end of enclosing array after a primitive
+                    if (depth == 0) return i;
+                    depth--;
+                    if (depth == 0) return i + 1;
+                    break;
+                case ',':
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    if (depth == 0) return i;
+                    break;
+                default: // part of value
+            }
+        }
+        throw malformed(mBuffer.length);
+    }
+
+    private int skipWhitespace(int offset) {
+        while (offset < mBuffer.length) {
+            byte b = mBuffer[offset];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') break;
+            offset++;
+        }
+        return offset;
+    }
+
+    private void addElement(int start, int end) {
+        if (mSize == mStarts.length) {
+            int[] starts = new int[mSize * 2];
+            int[] ends = new int[mSize * 2];
+            System.arraycopy(mStarts, 0, starts, 0, mSize);
+            System.arraycopy(mEnds, 0, ends, 0, mSize);
+            mStarts = starts;
+            mEnds = ends;
+        }
+        mStarts[mSize] = start;
+        mEnds[mSize] = end;
+        mSize++;
+    }
+
+    private static JsonSyntaxException malformed(int offset) {
+        return new JsonSyntaxException("Malformed JSON array at offset " + offset);
+    }
+
+}
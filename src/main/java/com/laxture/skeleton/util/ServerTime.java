@@ -1,23 +1,142 @@
 package com.laxture.skeleton.util;
 
+import android.os.SystemClock;
+
+import com.laxture.lib.util.LLog;
+
 import org.joda.time.DateMidnight;
 import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.util.Locale;
 
+/**
+ * Server clock estimated on device.
+ *
+ * Offset is anchored to {@link SystemClock#elapsedRealtime()}, so changing wall
+ * clock of device doesn't affect it. It is updated by <code>Date</code> header of
+ * API responses, compensated by half of round trip time and smoothed over
+ * samples. Before the first sample, wall clock of device is used.
+ *
+ * Use {@link #currentTimeMillis()} in hot paths, e.g. binding list items,
+ * {@link #now()} allocates DateTime when time changes.
+ */
 public class ServerTime {
 
-    private static long sLocalTimeOffset;
+    // RFC 1123 date of HTTP header
+    private static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormat
+            .forPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'").withLocale(Locale.US).withZoneUTC();
+
+    // Date header is truncated to seconds
+    private static final long DATE_RESOLUTION = 1000;
+
+    // sample with longer round trip is too inaccurate to use
+    private static final long MAX_ROUND_TRIP = 2 * 1000;
+
+    // server clock is considered adjusted, smoothing restarts
+    private static final long MAX_DRIFT = 5 * 60 * 1000;
+
+    // weight of new sample in smoothed offset
+    private static final int SMOOTHING_DIVISOR = 4;
+
+    // server time - elapsed realtime
+    private static volatile long sRealtimeOffset;
+    private static volatile boolean sSynced;
+
+    private static volatile DateTime sLastNow;
 
     public static long currentTimeMillis() {
-        return System.currentTimeMillis() + sLocalTimeOffset;
+        return sSynced ? SystemClock.elapsedRealtime() + sRealtimeOffset : System.currentTimeMillis();
+    }
+
+    /**
+     * @return milliseconds passed since given server time, negative if it is
+     * in the future.
+     */
+    public static long millisSince(long serverTime) {
+        return currentTimeMillis() - serverTime;
     }
 
-    public static void setServerTime(long serverTime) {
+    /**
+     * @return true if server time has been received at least once.
+     */
+    public static boolean isSynced() {
+        return sSynced;
+    }
+
+    /**
+     * Set server time as exact, previous samples are dropped.
+     */
+    public static synchronized void setServerTime(long serverTime) {
         if (serverTime <= 0) return;
-        sLocalTimeOffset = serverTime - System.currentTimeMillis();
+        sRealtimeOffset = serverTime - SystemClock.elapsedRealtime();
+        sSynced = true;
+    }
+
+    /**
+     * Update server time by <code>Date</code> header of a response. Response
+     * served by a cache on the way, i.e. with non-zero <code>Age</code>, is
+     * skipped, its Date is when origin generated it.
+     *
+     * @param age <code>Age</code> header, can be null.
+     * @param requestRealtime elapsed realtime when request was sent, after
+     *                        connection is set up.
+     * @param responseRealtime elapsed realtime when response header was received.
+     */
+    public static void onResponseDate(String date, String age, long requestRealtime, long responseRealtime) {
+        if (date == null || !isZeroAge(age)) return;
+        long serverTime;
+        try {
+            serverTime = HTTP_DATE_FORMAT.parseMillis(date.trim());
+        } catch (IllegalArgumentException e) {
+            LLog.w("Invalid Date header %s", date);
+            return;
+        }
+        // server stamped the header somewhere within its truncated second
+        addSample(serverTime + DATE_RESOLUTION / 2, responseRealtime - requestRealtime, responseRealtime);
+    }
+
+    private static boolean isZeroAge(String age) {
+        if (age == null) return true;
+        try {
+            return Long.parseLong(age.trim()) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param serverTime time server sent the response.
+     * @param roundTrip elapsed time from sending request to receiving response.
+     * @param responseRealtime elapsed realtime when response was received.
+     */
+    public static synchronized void addSample(long serverTime, long roundTrip, long responseRealtime) {
+        if (serverTime <= 0 || roundTrip < 0 || roundTrip > MAX_ROUND_TRIP) return;
+        long offset = serverTime + roundTrip / 2 - responseRealtime;
+        if (!sSynced || Math.abs(offset - sRealtimeOffset) > MAX_DRIFT) {
+            sRealtimeOffset = offset;
+            sSynced = true;
+        } else {
+            sRealtimeOffset += (offset - sRealtimeOffset) / SMOOTHING_DIVISOR;
+        }
     }
 
+    /**
+     * Same instance is returned until server time moves on.
+     */
     public static DateTime now() {
-        return new DateTime(currentTimeMillis());
+        long millis = currentTimeMillis();
+        DateTime now = sLastNow;
+        if (now == null || now.getMillis() != millis) {
+            now = new DateTime(millis);
+            sLastNow = now;
+        }
+        return now;
+    }
+
+    public static DateMidnight today() {
+        return new DateMidnight(currentTimeMillis());
     }
 
 }
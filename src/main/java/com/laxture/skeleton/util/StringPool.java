@@ -0,0 +1,92 @@
+package com.laxture.skeleton.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool to deduplicate short strings decoded from JSON, e.g. category
+ * names or status codes repeated in every element of a list.
+ *
+ * It is a direct-mapped table: a string either hits the equal string in its
+ * slot, or replaces it. So memory of pool is fixed, lookup needs no lock, and
+ * racing threads only cost a missed deduplication.
+ */
+public class StringPool {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_MAX_LENGTH = 64;
+
+    // rough size of String object and its char array header
+    private static final int STRING_OVERHEAD = 40;
+
+    private static StringPool sDefault;
+
+    public static synchronized StringPool getDefault() {
+        if (sDefault == null) sDefault = new StringPool(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+        return sDefault;
+    }
+
+    private final String[] mSlots;
+    private final int mMask;
+    private final int mMaxLength;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mBytesSaved = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to power of 2.
+     * @param maxLength longer strings are unlikely repeated, and are not pooled.
+     */
+    public StringPool(int capacity, int maxLength) {
+        int size = Integer.highestOneBit(Math.max(capacity, 1) - 1) << 1;
+        mSlots = new String[Math.max(size, 1)];
+        mMask = mSlots.length - 1;
+        mMaxLength = maxLength;
+    }
+
+    /**
+     * @return pooled string equal to value, or value itself.
+     */
+    public String intern(String value) {
+        if (value == null || value.length() > mMaxLength) return value;
+
+        int hash = value.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mMask;
+        String pooled = mSlots[index];
+        if (value.equals(pooled)) {
+            mHitCount.incrementAndGet();
+            mBytesSaved.addAndGet(STRING_OVERHEAD + 2 * value.length());
+            return pooled;
+        }
+        mSlots[index] = value;
+        mMissCount.incrementAndGet();
+        return value;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mSlots.length; i++) mSlots[i] = null;
+    }
+
+    //*************************************************************************
+    //  Statistics
+    //*************************************************************************
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Estimated size of duplicated strings replaced by pooled ones when they
+     * were decoded. It is an upper bound of heap saved, not retained heap: a
+     * pooled string evicted from its slot later is no longer shared by new
+     * values, while the ones already decoded keep both copies alive.
+     */
+    public long getBytesSaved() {
+        return mBytesSaved.get();
+    }
+
+}
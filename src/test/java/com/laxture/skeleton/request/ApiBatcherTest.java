@@ -0,0 +1,151 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.task.TaskException;
+import com.laxture.lib.task.TaskListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ApiBatcherTest {
+
+    private static final String BATCH_URL = "http://localhost/batch";
+    private static final String ECHO_URL = "http://localhost/echo";
+    private static final String BROKEN_URL = "http://localhost/broken";
+    private static final String MISSING_URL = "http://localhost/missing";
+
+    public static class Echo {
+        public String value;
+        public String locale;
+    }
+
+    public static class EchoTask extends AbstractApiTask<Echo> {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Echo result;
+        volatile TaskException error;
+
+        EchoTask(String url) {
+            super(url);
+            addFinishedListener(new TaskListener.TaskFinishedListener<Echo>() {
+                @Override
+                public void onTaskFinished(Echo echo) {
+                    result = echo;
+                    done.countDown();
+                }
+            });
+            addFailedListener(new TaskListener.TaskFailedListener<Echo>() {
+                @Override
+                public void onTaskFailed(Echo echo, TaskException ex) {
+                    error = ex;
+                    done.countDown();
+                }
+            });
+        }
+
+        @Override
+        public void init() {
+            setStreamingDecode(true);
+        }
+
+        @Override
+        protected Echo generateResult() {
+            return getDecodedResult();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("task is not done in time", done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private LocalBatchServer mServer;
+    private ApiBatcher mBatcher;
+
+    @Before
+    public void setUp() {
+        mServer = new LocalBatchServer();
+        mServer.register(ECHO_URL, new LocalBatchServer.Handler() {
+            @Override
+            public String handle(String url, Map<String, String> args, Map<String, String> headers) {
+                String locale = headers.get("X-Locale");
+                return "{\"value\":\"" + args.get("value") + "\""
+                        + (locale != null ? ",\"locale\":\"" + locale + "\"" : "") + "}";
+            }
+        });
+        mServer.register(BROKEN_URL, new LocalBatchServer.Handler() {
+            @Override
+            public String handle(String url, Map<String, String> args, Map<String, String> headers) {
+                throw new IllegalStateException("broken");
+            }
+        });
+        mBatcher = new ApiBatcher(BATCH_URL);
+        mBatcher.setTransport(mServer);
+    }
+
+    @Test
+    public void partsAreDeliveredToTheirTasks() throws InterruptedException {
+        EchoTask first = echo("first");
+        EchoTask second = echo("second");
+        second.setHeader("X-Locale", "zh-CN");
+
+        mBatcher.runBatch(first, second);
+        first.await();
+        second.await();
+
+        assertEquals(1, mServer.getBatchCount());
+        assertEquals(2, mServer.getRequestCount());
+        assertNull(first.error);
+        assertEquals("first", first.result.value);
+        assertNull(first.result.locale);
+        assertNull(second.error);
+        assertEquals("second", second.result.value);
+        assertEquals("zh-CN", second.result.locale);
+    }
+
+    @Test
+    public void failedPartsFailOnlyTheirTasks() throws InterruptedException {
+        EchoTask ok = echo("ok");
+        EchoTask broken = new EchoTask(BROKEN_URL);
+        EchoTask missing = new EchoTask(MISSING_URL);
+
+        mBatcher.runBatch(ok, broken, missing);
+        ok.await();
+        broken.await();
+        missing.await();
+
+        assertEquals(1, mServer.getBatchCount());
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals("ok", ok.result.value);
+        assertNull(broken.result);
+        assertEquals(ApiException.BATCH_RESPONSE_FAILED, broken.error.getErrorCode());
+        assertNull(missing.result);
+        assertEquals(ApiException.BATCH_RESPONSE_FAILED, missing.error.getErrorCode());
+    }
+
+    @Test
+    public void submittedTasksAreSentInOneBatch() throws InterruptedException {
+        mBatcher.setMaxBatchSize(3);
+        EchoTask[] tasks = {echo("a"), echo("b"), echo("c")};
+        for (EchoTask task : tasks) mBatcher.submit(task);
+        for (EchoTask task : tasks) task.await();
+
+        assertEquals(1, mServer.getBatchCount());
+        assertEquals("a", tasks[0].result.value);
+        assertEquals("b", tasks[1].result.value);
+        assertEquals("c", tasks[2].result.value);
+    }
+
+    private static EchoTask echo(String value) {
+        EchoTask task = new EchoTask(ECHO_URL);
+        task.addArgument("value", value);
+        return task;
+    }
+
+}
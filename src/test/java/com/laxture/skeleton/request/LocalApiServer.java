@@ -0,0 +1,204 @@
+package com.laxture.skeleton.request;
+
+import com.laxture.lib.util.LLog;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal HTTP/1.1 server on loopback with keep-alive, to exercise
+ * {@link ApiTransport} without a real server. It counts accepted connections
+ * and handled requests separately, so connection reuse of a transport can be
+ * verified, e.g. 10 sequential requests through {@link PooledTransport} should
+ * be served by 1 connection.
+ */
+public class LocalApiServer {
+
+    public interface Handler {
+        /**
+         * @param args query and form arguments.
+         * @return JSON body of the response.
+         */
+        String handle(String path, Map<String, String> args) throws Exception;
+    }
+
+    private final Map<String, Handler> mHandlers = new HashMap<>();
+    private ServerSocket mServerSocket;
+    private int mConnectionCount;
+    private int mRequestCount;
+
+    public synchronized void register(String path, Handler handler) {
+        mHandlers.put(path, handler);
+    }
+
+    public synchronized void start() throws IOException {
+        if (mServerSocket != null) return;
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final ServerSocket serverSocket = mServerSocket;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        synchronized (LocalApiServer.this) {
+                            mConnectionCount++;
+                        }
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }, "LocalApiServer-Connection").start();
+                    } catch (IOException e) {
+                        // server is stopped
+                    }
+                }
+            }
+        }, "LocalApiServer").start();
+    }
+
+    public synchronized void stop() {
+        if (mServerSocket == null) return;
+        try {
+            mServerSocket.close();
+        } catch (IOException ignored) {}
+        mServerSocket = null;
+    }
+
+    /**
+     * @return absolute url of path on this server.
+     */
+    public synchronized String getUrl(String path) {
+        if (mServerSocket == null) throw new IllegalStateException("Server is not started");
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    /**
+     * Count of TCP connections accepted.
+     */
+    public synchronized int getConnectionCount() {
+        return mConnectionCount;
+    }
+
+    /**
+     * Count of HTTP requests handled in all connections.
+     */
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    //*************************************************************************
+    //  Connection
+    //*************************************************************************
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            // one request after another until client closes the connection
+            while ((requestLine = readLine(in)) != null) {
+                if (requestLine.length() == 0) continue;
+                String[] parts = requestLine.split(" ");
+                String target = parts.length > 1 ? parts[1] : "/";
+
+                int contentLength = 0;
+                boolean close = false;
+                String line;
+                while ((line = readLine(in)) != null && line.length() > 0) {
+                    int colon = line.indexOf(':');
+                    if (colon < 0) continue;
+                    String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+                    String value = line.substring(colon + 1).trim();
+                    if (name.equals("content-length")) contentLength = Integer.parseInt(value);
+                    else if (name.equals("connection")) close = value.equalsIgnoreCase("close");
+                }
+                byte[] body = new byte[contentLength];
+                int read = 0;
+                while (read < contentLength) {
+                    int count = in.read(body, read, contentLength - read);
+                    if (count == -1) throw new IOException("Unexpected end of request body");
+                    read += count;
+                }
+
+                respond(out, target, new String(body, "UTF-8"));
+                if (close) break;
+            }
+        } catch (IOException e) {
+            LLog.d("Connection of LocalApiServer closed, %s", e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void respond(OutputStream out, String target, String form) throws IOException {
+        int queryStart = target.indexOf('?');
+        String path = queryStart >= 0 ? target.substring(0, queryStart) : target;
+        Map<String, String> args = new HashMap<>();
+        if (queryStart >= 0) parseArguments(target.substring(queryStart + 1), args);
+        parseArguments(form, args);
+
+        Handler handler;
+        synchronized (this) {
+            handler = mHandlers.get(path);
+            mRequestCount++;
+        }
+
+        int status = HttpURLConnection.HTTP_OK;
+        String body = "";
+        if (handler == null) {
+            status = HttpURLConnection.HTTP_NOT_FOUND;
+        } else try {
+            body = handler.handle(path, args);
+        } catch (Exception e) {
+            LLog.w("Failed to handle %s", e, path);
+            status = HttpURLConnection.HTTP_INTERNAL_ERROR;
+        }
+
+        byte[] bytes = body.getBytes("UTF-8");
+        String head = "HTTP/1.1 " + status + " " + (status == HttpURLConnection.HTTP_OK ? "OK" : "Error") + "\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n"
+                + "Content-Length: " + bytes.length + "\r\n"
+                + "Connection: keep-alive\r\n"
+                + "\r\n";
+        out.write(head.getBytes("US-ASCII"));
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static void parseArguments(String encoded, Map<String, String> args) throws IOException {
+        if (encoded.length() == 0) return;
+        for (String pair : encoded.split("&")) {
+            int equal = pair.indexOf('=');
+            if (equal < 0) continue;
+            args.put(URLDecoder.decode(pair.substring(0, equal), "UTF-8"),
+                    URLDecoder.decode(pair.substring(equal + 1), "UTF-8"));
+        }
+    }
+
+    // header lines are ASCII
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') return line.toString("US-ASCII").trim();
+            line.write(b);
+        }
+        return line.size() > 0 ? line.toString("US-ASCII") : null;
+    }
+
+}
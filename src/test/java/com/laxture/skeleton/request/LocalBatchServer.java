@@ -0,0 +1,110 @@
+package com.laxture.skeleton.request;
+
+import com.google.gson.stream.JsonReader;
+import com.laxture.lib.util.LLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process implementation of batch endpoint described by
+ * {@link BatchProtocol}. Register a {@link Handler} per url, then plug it to
+ * {@link ApiBatcher#setTransport(ApiTransport)} to exercise batching without
+ * a real server.
+ */
+public class LocalBatchServer implements ApiTransport {
+
+    public interface Handler {
+        /**
+         * @param headers headers forwarded for this request in the envelope.
+         * @return JSON body of the response.
+         */
+        String handle(String url, Map<String, String> args, Map<String, String> headers) throws Exception;
+    }
+
+    private final Map<String, Handler> mHandlers = new HashMap<>();
+    private int mBatchCount;
+    private int mRequestCount;
+
+    public synchronized void register(String url, Handler handler) {
+        mHandlers.put(url, handler);
+    }
+
+    /**
+     * Count of batch envelopes handled.
+     */
+    public synchronized int getBatchCount() {
+        return mBatchCount;
+    }
+
+    /**
+     * Count of requests handled in all batches.
+     */
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    @Override
+    public ApiResponse execute(ApiRequest request) throws IOException {
+        String envelope = readEnvelope(request);
+        if (envelope == null) {
+            return new ApiResponse(HttpURLConnection.HTTP_BAD_REQUEST,
+                    Collections.<String, String>emptyMap(), null, null);
+        }
+        byte[] body = handle(envelope).getBytes("UTF-8");
+        return new ApiResponse(HttpURLConnection.HTTP_OK,
+                Collections.singletonMap("Content-Type", "application/json"),
+                new ByteArrayInputStream(body), null);
+    }
+
+    String handle(String requestEnvelope) throws IOException {
+        List<BatchProtocol.Request> requests = BatchProtocol.decodeRequests(
+                new JsonReader(new StringReader(requestEnvelope)));
+
+        List<BatchProtocol.Part> parts = new ArrayList<>();
+        for (BatchProtocol.Request request : requests) {
+            Handler handler;
+            synchronized (this) {
+                handler = mHandlers.get(request.url);
+                mRequestCount++;
+            }
+            if (handler == null) {
+                parts.add(new BatchProtocol.Part(request.id, HttpURLConnection.HTTP_NOT_FOUND, null));
+                continue;
+            }
+            try {
+                parts.add(new BatchProtocol.Part(request.id, HttpURLConnection.HTTP_OK,
+                        handler.handle(request.url, request.args, request.headers)));
+            } catch (Exception e) {
+                LLog.w("Failed to handle %s", e, request.url);
+                parts.add(new BatchProtocol.Part(request.id, HttpURLConnection.HTTP_INTERNAL_ERROR, null));
+            }
+        }
+
+        synchronized (this) {
+            mBatchCount++;
+        }
+        return BatchProtocol.encodeResponses(parts);
+    }
+
+    // envelope is posted as form argument BatchProtocol.ARG_REQUESTS
+    private static String readEnvelope(ApiRequest request) throws IOException {
+        if (request.body == null) return null;
+        String prefix = BatchProtocol.ARG_REQUESTS + "=";
+        for (String pair : new String(request.body, "UTF-8").split("&")) {
+            if (pair.startsWith(prefix)) {
+                return URLDecoder.decode(pair.substring(prefix.length()), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+}
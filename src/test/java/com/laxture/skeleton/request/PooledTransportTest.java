@@ -0,0 +1,77 @@
+package com.laxture.skeleton.request;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class PooledTransportTest {
+
+    private LocalApiServer mServer;
+    private PooledTransport mTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new LocalApiServer();
+        mServer.register("/ping", new LocalApiServer.Handler() {
+            @Override
+            public String handle(String path, Map<String, String> args) {
+                return "{\"ok\":true}";
+            }
+        });
+        mServer.register("/large", new LocalApiServer.Handler() {
+            @Override
+            public String handle(String path, Map<String, String> args) {
+                char[] padding = new char[256 * 1024];
+                Arrays.fill(padding, 'x');
+                return "{\"padding\":\"" + new String(padding) + "\"}";
+            }
+        });
+        mServer.start();
+        mTransport = new PooledTransport();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void sequentialRequestsReuseOneConnection() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            ApiResponse response = mTransport.execute(get("/ping"));
+            try {
+                assertEquals(200, response.code);
+            } finally {
+                response.close();
+            }
+        }
+        assertEquals(10, mServer.getRequestCount());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void unreadLargeBodyIsDiscarded() throws IOException {
+        mTransport.execute(get("/large")).close();
+
+        ApiResponse response = mTransport.execute(get("/ping"));
+        try {
+            assertEquals(200, response.code);
+        } finally {
+            response.close();
+        }
+        assertEquals(2, mServer.getConnectionCount());
+    }
+
+    private ApiRequest get(String path) {
+        return new ApiRequest(mServer.getUrl(path), ApiRequest.METHOD_GET,
+                new HashMap<String, String>(), null, 5000, 5000);
+    }
+
+}
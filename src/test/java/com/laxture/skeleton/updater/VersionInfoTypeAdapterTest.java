@@ -0,0 +1,118 @@
+package com.laxture.skeleton.updater;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.laxture.skeleton.updater.VersionUpdater.VersionInfo;
+import com.laxture.skeleton.util.GsonUtil;
+import com.laxture.skeleton.util.GsonUtil.SkipJson;
+
+import org.junit.Test;
+
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@SuppressWarnings("deprecation")
+public class VersionInfoTypeAdapterTest {
+
+    // @JsonAdapter is not inherited, so Gson reflects fields of this subclass
+    // the way it did before VersionInfoTypeAdapter was bound.
+    private static class ReflectiveVersionInfo extends VersionInfo {}
+
+    private static class Annotated {
+        @SkipJson(serialize = false)
+        public String localOnly;
+        @SkipJson(deserialize = false)
+        public String remoteOnly;
+        public String plain;
+    }
+
+    private static final Gson REFLECTIVE = new GsonBuilder()
+            .excludeFieldsWithModifiers(Modifier.STATIC, Modifier.PRIVATE)
+            .addSerializationExclusionStrategy(new SkipJsonStrategy(true))
+            .addDeserializationExclusionStrategy(new SkipJsonStrategy(false))
+            .create();
+
+    @Test
+    public void writeMatchesReflection() {
+        assertEquals(reflect(fill(new ReflectiveVersionInfo())),
+                GsonUtil.toJsonTree(fill(new VersionInfo())));
+    }
+
+    @Test
+    public void writeNullFieldsMatchesReflection() {
+        assertEquals(reflect(new ReflectiveVersionInfo()),
+                GsonUtil.toJsonTree(new VersionInfo()));
+    }
+
+    @Test
+    public void readMatchesReflection() {
+        String json = reflect(fill(new ReflectiveVersionInfo())).toString();
+        VersionInfo expected = REFLECTIVE.fromJson(json, ReflectiveVersionInfo.class);
+        VersionInfo decoded = GsonUtil.fromJson(json, VersionInfo.class);
+        assertEquals(expected.mainVersion, decoded.mainVersion);
+        assertEquals(expected.buildNum, decoded.buildNum);
+        assertEquals(expected.url, decoded.url);
+        assertEquals(expected.force, decoded.force);
+        assertEquals(expected.forceUpdateUnderBuildNum, decoded.forceUpdateUnderBuildNum);
+        assertArrayEquals(expected.features, decoded.features);
+        assertEquals(expected.hasUpdate, decoded.hasUpdate);
+    }
+
+    @Test
+    public void roundTrip() {
+        VersionInfo info = fill(new VersionInfo());
+        VersionInfo decoded = GsonUtil.fromJson(GsonUtil.toJson(info), VersionInfo.class);
+        assertEquals(GsonUtil.toJsonTree(info), GsonUtil.toJsonTree(decoded));
+    }
+
+    @Test
+    public void skippedFieldsFollowAnnotation() {
+        assertEquals(Collections.singleton("localOnly"),
+                GsonUtil.getSkippedFields(Annotated.class, true));
+        assertEquals(Collections.singleton("remoteOnly"),
+                GsonUtil.getSkippedFields(Annotated.class, false));
+    }
+
+    private static JsonElement reflect(VersionInfo info) {
+        return REFLECTIVE.toJsonTree(info, ReflectiveVersionInfo.class);
+    }
+
+    private static <T extends VersionInfo> T fill(T info) {
+        info.mainVersion = "2.1";
+        info.buildNum = 42;
+        info.url = "https://example.com/app.apk";
+        info.force = true;
+        info.forceUpdateUnderBuildNum = 30;
+        info.features = new String[] {"Faster sync", "Dark mode"};
+        info.hasUpdate = true;
+        return info;
+    }
+
+    private static class SkipJsonStrategy implements ExclusionStrategy {
+
+        private final boolean mSerialize;
+
+        SkipJsonStrategy(boolean serialize) {
+            mSerialize = serialize;
+        }
+
+        @Override
+        public boolean shouldSkipField(FieldAttributes field) {
+            SkipJson annotation = field.getAnnotation(SkipJson.class);
+            return annotation != null
+                    && (mSerialize ? !annotation.serialize() : !annotation.deserialize());
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> clazz) {
+            return false;
+        }
+    }
+
+}
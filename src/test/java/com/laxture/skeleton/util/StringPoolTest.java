@@ -0,0 +1,92 @@
+package com.laxture.skeleton.util;
+
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StringPoolTest {
+
+    private static final int ITEM_COUNT = 1000;
+    private static final String[] CATEGORIES = {"news", "sports", "finance", "travel", "music"};
+
+    public static class Item {
+        public int id;
+        public String category;
+    }
+
+    public static class InternedItem {
+        public int id;
+        @JsonAdapter(GsonUtil.InternStringTypeAdapterFactory.class)
+        public String category;
+    }
+
+    @Before
+    public void setUp() {
+        StringPool.getDefault().clear();
+    }
+
+    @After
+    public void tearDown() {
+        GsonUtil.setInternAllStrings(false);
+        StringPool.getDefault().clear();
+    }
+
+    @Test
+    public void plainDecodeKeepsEveryCopy() {
+        List<Item> items = GsonUtil.fromJson(payload(), new TypeToken<List<Item>>() {}.getType());
+        assertEquals(ITEM_COUNT, items.size());
+        IdentityHashMap<String, Boolean> distinct = new IdentityHashMap<>();
+        for (Item item : items) distinct.put(item.category, Boolean.TRUE);
+        assertEquals(ITEM_COUNT, distinct.size());
+    }
+
+    @Test
+    public void internedFieldSharesInstances() {
+        List<InternedItem> items = GsonUtil.fromJson(payload(),
+                new TypeToken<List<InternedItem>>() {}.getType());
+        assertEquals(ITEM_COUNT, items.size());
+        IdentityHashMap<String, Boolean> distinct = new IdentityHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(CATEGORIES[i % CATEGORIES.length], items.get(i).category);
+            distinct.put(items.get(i).category, Boolean.TRUE);
+        }
+        assertTrue("distinct instances: " + distinct.size(), distinct.size() <= CATEGORIES.length * 2);
+    }
+
+    @Test
+    public void internAllStringsSharesInstances() {
+        GsonUtil.setInternAllStrings(true);
+        List<Item> items = GsonUtil.fromJson(payload(), new TypeToken<List<Item>>() {}.getType());
+        IdentityHashMap<String, Boolean> distinct = new IdentityHashMap<>();
+        for (Item item : items) distinct.put(item.category, Boolean.TRUE);
+        assertTrue("distinct instances: " + distinct.size(), distinct.size() <= CATEGORIES.length * 2);
+    }
+
+    @Test
+    public void longStringsAreNotPooled() {
+        StringPool pool = new StringPool(16, 4);
+        String value = "longer than four";
+        assertTrue(pool.intern(new String(value)) != pool.intern(new String(value)));
+        assertEquals(0, pool.getHitCount());
+    }
+
+    private static String payload() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i).append(",\"category\":\"")
+              .append(CATEGORIES[i % CATEGORIES.length]).append("\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+}